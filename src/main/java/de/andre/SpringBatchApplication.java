@@ -1,76 +1,44 @@
 package de.andre;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-import de.andre.process.DeepSearchPlacement;
-import de.andre.process.EndlessConstruction;
-import de.andre.process.MonteCarloSearchTree;
-import de.andre.process.RandomDeepSearchPlacement;
-import de.andre.process.RandomDeepSearchPlacement2;
+import de.andre.process.ExperimentScheduler;
+import de.andre.process.ExperimentScheduler.Experiment;
+import lombok.extern.log4j.Log4j;
 
 @SpringBootApplication
+@Log4j
 public class SpringBatchApplication implements CommandLineRunner {
     @Value("${exp.clazz}")
     private String experimentName;
+    /** experiments separated by ';' (see {@link ExperimentScheduler}), if empty only exp.clazz is run */
+    @Value("${exp.batch}")
+    private String batch = "";
 
     @Autowired
-    private EndlessConstruction endlessConstruction;
-    @Autowired
-    private RandomDeepSearchPlacement randomDeepSearchPlacement;
-    @Autowired
-    private RandomDeepSearchPlacement2 randomDeepSearchPlacement2;
-    @Autowired
-    private DeepSearchPlacement deepSearchPlacement;
-    @Autowired
-    private MonteCarloSearchTree monteCarloPlacement;
+    private ExperimentScheduler scheduler;
 
     @Override
     public void run(String... args) throws Exception {
-	switch (experimentName) {
-	case "EndlessConstruction":
-	    new Thread() {
-		public void run() {
-		    endlessConstruction.runDBExperiment();
-		};
-	    }.start();
-	    break;
-	case "RandomDeepSearchPlacement":
-	    new Thread() {
-		public void run() {
-		    randomDeepSearchPlacement.runDBExperiment();
-		};
-	    }.start();
-	    break;
-	case "RandomDeepSearchPlacement2":
-	    new Thread() {
-		public void run() {
-		    randomDeepSearchPlacement2.runDBExperiment();
-		};
-	    }.start();
-	    break;
-	case "DeepSearchPlacement":
-	    new Thread() {
-		public void run() {
-		    deepSearchPlacement.runDBExperiment();
-		};
-	    }.start();
-	    break;
-	case "MonteCarloSearchTree":
-	    new Thread() {
-		public void run() {
-		    monteCarloPlacement.runDBExperiment();
-		};
-	    }.start();
-	    break;
-	default:
-	    System.err.println("Unknown experiment '" + experimentName + "'.");
-	    System.exit(1);
-	    break;
+	List<Experiment> experiments;
+	try {
+	    experiments = Experiment.parseAll(batch.trim().isEmpty() ? experimentName : batch);
+	} catch (IllegalArgumentException e) {
+	    log.error("invalid exp.batch: " + e.getMessage());
+	    throw e;
 	}
+
+	new Thread() {
+	    public void run() {
+		scheduler.runAll(experiments);
+	    };
+	}.start();
     }
 
     public static void main(String[] args) throws Exception {
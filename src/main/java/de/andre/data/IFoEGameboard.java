@@ -11,6 +11,26 @@ public interface IFoEGameboard extends Cloneable {
 	int getRating();
 
 	int getOccupiedTiles();
+
+	/**
+	 * @return a rating this board can never exceed, no matter which buildings are added. The free tiles that lie
+	 *         in a free area of the size of a house are counted as houses (as much whole houses as fit), every other
+	 *         free tile as way (or castle, if there is no castle yet).
+	 */
+	int getRatingUpperBound();
+
+	/**
+	 * @return 64 bit Zobrist hash of all tiles. Boards with the same layout have the same hash, no matter in which
+	 *         order the buildings were placed.
+	 */
+	long getLayoutHash();
+
+	/**
+	 * @return 64 bit hash that is the same for a layout and its horizontal and vertical mirror images. The rating
+	 *         doesn't change by mirroring, so it's enough to explore one of these layouts. Transposition isn't
+	 *         included, because the castle isn't square.
+	 */
+	long getCanonicalHash();
 	
 	/**
 	 * @param x zero based index
@@ -25,8 +45,91 @@ public interface IFoEGameboard extends Cloneable {
 	 * @param building
 	 */
 	void placeBuildingWithoutAnyChecks(int x, int y, TileState building);
+
+	/**
+	 * Same as {@link #placeBuildingWithoutAnyChecks(int, int, TileState)}, but all replaced tiles are remembered,
+	 * so that the placement can be reverted with {@link #undoLastPlacement()}.
+	 * 
+	 * @param x zero based index
+	 * @param y zero based index
+	 * @param building
+	 */
+	void placeBuildingUndoable(int x, int y, TileState building);
+
+	/**
+	 * reverts the last placement done by {@link #placeBuildingUndoable(int, int, TileState)}
+	 * 
+	 * @throws IllegalStateException if there is nothing to undo
+	 */
+	void undoLastPlacement();
+
+	/**
+	 * @return number of placements that can be undone. A clone always starts with no placements to undo.
+	 */
+	int getUndoablePlacements();
 	
 	List<Tile> getPlacementOptions(TileState building);
 
+	/**
+	 * @param x zero based index of the top-left tile, may be outside of the board
+	 * @param y zero based index of the top-left tile, may be outside of the board
+	 * @param building
+	 * @return <code>true</code> if the building can be placed there by the same rules as
+	 *         {@link #getPlacementOptions(TileState)}
+	 */
+	boolean canPlaceBuilding(int x, int y, TileState building);
+
+	/**
+	 * @param building
+	 * @return number of options to place the given building
+	 */
+	int countPlacementOptions(TileState building);
+
+	/**
+	 * Allows to choose an option without creating a list of all options.
+	 * 
+	 * @param building
+	 * @param index zero based, lower than {@link #countPlacementOptions(TileState)}
+	 * @return the option with the given index, packed with {@link Tile#pack(int, int, TileState)}
+	 */
+	int getPlacementOption(TileState building, int index);
+
+	/**
+	 * writes all options packed with {@link Tile#pack(int, int, TileState)} into the given buffer.
+	 * 
+	 * @param building
+	 * @param buffer reusable buffer, it must be able to hold at least width * height options
+	 * @return number of options written to the buffer
+	 */
+	int getPlacementOptions(TileState building, int[] buffer);
+
+	/**
+	 * @param building
+	 * @param visitor will be called once per option
+	 */
+	void visitPlacementOptions(TileState building, PlacementOptionVisitor visitor);
+
+	/**
+	 * @return number of longs needed to store this board with {@link #exportPacked(long[], int)}
+	 */
+	int getPackedSize();
+
+	/**
+	 * writes all tiles in the packed format described at {@link de.andre.data.impl.PackedTiles}
+	 * 
+	 * @param target
+	 * @param offset index of the first long to write
+	 */
+	void exportPacked(long[] target, int offset);
+
+	/**
+	 * replaces all tiles by the packed ones written with {@link #exportPacked(long[], int)} by a board of the same
+	 * size. Nothing can be undone afterwards.
+	 * 
+	 * @param source
+	 * @param offset index of the first long to read
+	 */
+	void importPacked(long[] source, int offset);
+
 	IFoEGameboard clone();
 }
@@ -0,0 +1,21 @@
+package de.andre.data;
+
+/**
+ * Receives placement options one by one, so that no list and no {@link Tile}
+ * has to be created.
+ * 
+ * @author Andre
+ */
+@FunctionalInterface
+public interface PlacementOptionVisitor {
+
+    /**
+     * @param x
+     *            topLeft corner, zero based
+     * @param y
+     *            topLeft corner, zero based
+     * @param building
+     *            the building that can be placed there
+     */
+    void visit(int x, int y, TileState building);
+}
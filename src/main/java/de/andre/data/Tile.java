@@ -1,6 +1,9 @@
 package de.andre.data;
 
 public class Tile {
+    private static final int COORDINATE_BITS = 12;
+    private static final int COORDINATE_MASK = (1 << COORDINATE_BITS) - 1;
+    private static final TileState[] BUILDINGS = TileState.values();
 
     private final int x;
 
@@ -23,17 +26,77 @@ public class Tile {
      * @return zero based index
      */
     public int getX() {
-        return x;
+	return x;
     }
 
     /**
      * @return zero based index
      */
     public int getY() {
-        return y;
+	return y;
     }
 
     public TileState getBuilding() {
-        return building;
+	return building;
+    }
+
+    /**
+     * @return this tile packed into a single int (see
+     *         {@link #pack(int, int, TileState)})
+     */
+    public int pack() {
+	return pack(x, y, building);
+    }
+
+    /**
+     * packs a tile into a single int, so that it can be stored without
+     * creating any object.
+     * 
+     * @param x
+     *            zero based index, must be lower than 4096
+     * @param y
+     *            zero based index, must be lower than 4096
+     * @param building
+     *            the building
+     * @return the packed tile
+     */
+    public static int pack(int x, int y, TileState building) {
+	return (building.ordinal() << (2 * COORDINATE_BITS)) | (y << COORDINATE_BITS) | x;
+    }
+
+    /**
+     * @param packedTile
+     *            a tile packed with {@link #pack(int, int, TileState)}
+     * @return zero based index
+     */
+    public static int unpackX(int packedTile) {
+	return packedTile & COORDINATE_MASK;
+    }
+
+    /**
+     * @param packedTile
+     *            a tile packed with {@link #pack(int, int, TileState)}
+     * @return zero based index
+     */
+    public static int unpackY(int packedTile) {
+	return (packedTile >>> COORDINATE_BITS) & COORDINATE_MASK;
+    }
+
+    /**
+     * @param packedTile
+     *            a tile packed with {@link #pack(int, int, TileState)}
+     * @return the building
+     */
+    public static TileState unpackBuilding(int packedTile) {
+	return BUILDINGS[packedTile >>> (2 * COORDINATE_BITS)];
+    }
+
+    /**
+     * @param packedTile
+     *            a tile packed with {@link #pack(int, int, TileState)}
+     * @return a new tile
+     */
+    public static Tile unpack(int packedTile) {
+	return new Tile(unpackX(packedTile), unpackY(packedTile), unpackBuilding(packedTile));
     }
 }
@@ -1,22 +1,74 @@
 package de.andre.data.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import de.andre.data.IFoEGameboard;
+import de.andre.data.PlacementOptionVisitor;
 import de.andre.data.Tile;
 import de.andre.data.TileState;
 import de.andre.util.Assertion;
 
 public abstract class AbstractGameBoard implements IFoEGameboard {
     public static int numberOfBoardsCreated = 0;
+    private static final TileState[] BUILDINGS = TileState.values();
+    /** marks a tile outside of the board on the undo stack */
+    private static final int OUTSIDE = -1;
     protected final int width;
     protected final int height;
+    /** sum of the values of all tiles, maintained on every placement */
+    private int rating;
+    /** number of tiles that are not free, maintained on every placement */
+    private int occupiedTiles;
+    /** Zobrist keys, see {@link ZobristKeys} */
+    private final long[] zobristKeys;
+    /** Zobrist hash of all tiles, maintained on every placement */
+    private long layoutHash;
+    /**
+     * Zobrist hashes of the layout mirrored at the vertical axis, mirrored at
+     * the horizontal axis and rotated by 180 degrees (both mirrors)
+     */
+    private long mirroredXHash, mirroredYHash, rotatedHash;
+    /**
+     * for every undoable placement: the replaced tiles (as ordinals of
+     * {@link TileState}) followed by x, y and the ordinal of the building
+     */
+    private int[] undoStack;
+    private int undoStackSize;
+    private int undoablePlacements;
 
     public AbstractGameBoard(int width, int height) {
 	this.width = width;
 	this.height = height;
+	this.rating = width * height * TileState.FREE.getValue();
+	this.occupiedTiles = 0;
+	this.zobristKeys = ZobristKeys.forTiles(width * height);
+	this.layoutHash = 0L;
+	this.mirroredXHash = 0L;
+	this.mirroredYHash = 0L;
+	this.rotatedHash = 0L;
+	numberOfBoardsCreated++;
+    }
+
+    /**
+     * copies the size and all counters of the given board. Subclasses have to
+     * copy the tiles on their own. The undo history is not copied.
+     * 
+     * @param original
+     *            the board to copy
+     */
+    protected AbstractGameBoard(AbstractGameBoard original) {
+	this.width = original.width;
+	this.height = original.height;
+	this.rating = original.rating;
+	this.occupiedTiles = original.occupiedTiles;
+	this.zobristKeys = original.zobristKeys;
+	this.layoutHash = original.layoutHash;
+	this.mirroredXHash = original.mirroredXHash;
+	this.mirroredYHash = original.mirroredYHash;
+	this.rotatedHash = original.rotatedHash;
 	numberOfBoardsCreated++;
     }
 
@@ -48,26 +100,88 @@ public abstract class AbstractGameBoard implements IFoEGameboard {
 
     @Override
     public int getRating() {
-	int sum = 0;
-	for (int x = 0; x < width; x++) {
-	    for (int y = 0; y < height; y++) {
-		sum += getBuildingInternal(x, y).getValue();
-	    }
-	}
-	return sum;
+	return rating;
     }
     
     @Override
     public int getOccupiedTiles() {
-	int cnt = 0;
-	for (int x = 0; x < width; x++) {
-	    for (int y = 0; y < height; y++) {
-		if (getBuildingInternal(x, y) != TileState.FREE) {
-		    cnt++;
+	return occupiedTiles;
+    }
+
+    @Override
+    public int getRatingUpperBound() {
+	final TileState house = TileState.HOUSE;
+	// tiles, that may become a house, a bit per tile and a few longs per
+	// row. It's local, so the bound of a shared board can be computed by
+	// several threads.
+	int wordsPerRow = MathUtil.ceilDiv(width, Long.SIZE);
+	long[] coverable = new long[height * wordsPerRow];
+	for (int x = 0; x <= (width - house.getWidth()); x++) {
+	    for (int y = 0; y <= (height - house.getHeight()); y++) {
+		if (isBuildingAreaFree(x, y, house)) {
+		    for (int dy = 0; dy < house.getHeight(); dy++) {
+			for (int tx = x; tx < x + house.getWidth(); tx++) {
+			    coverable[(y + dy) * wordsPerRow + tx / Long.SIZE] |= 1L << tx;
+			}
+		    }
 		}
 	    }
 	}
-	return cnt;
+
+	int coverableTiles = 0;
+	int otherFreeTiles = 0;
+	boolean hasCastle = false;
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		TileState building = getBuildingInternal(x, y);
+		if (building == TileState.FREE) {
+		    if ((coverable[y * wordsPerRow + x / Long.SIZE] & (1L << x)) != 0L) {
+			coverableTiles++;
+		    } else {
+			otherFreeTiles++;
+		    }
+		} else if (building == TileState.CASTLE) {
+		    hasCastle = true;
+		}
+	    }
+	}
+	return ratingUpperBound(coverableTiles, otherFreeTiles, hasCastle);
+    }
+
+    /**
+     * @param coverableTiles
+     *            number of free tiles, that may become a house
+     * @param otherFreeTiles
+     *            number of the other free tiles
+     * @param hasCastle
+     *            <code>true</code> if the castle is placed already
+     * @return the current rating plus the best possible gain of every free
+     *         tile
+     */
+    protected int ratingUpperBound(int coverableTiles, int otherFreeTiles, boolean hasCastle) {
+	final TileState house = TileState.HOUSE;
+	final int free = TileState.FREE.getValue();
+	int otherGain = Math.max(0, TileState.WAY.getValue() - free);
+	if (!hasCastle) {
+	    otherGain = Math.max(otherGain, TileState.CASTLE.getValue() - free);
+	}
+	int houseGain = Math.max(otherGain, house.getValue() - free);
+	// houses don't overlap, so only whole houses fit into the coverable
+	// tiles
+	int houseTiles = coverableTiles - coverableTiles % (house.getWidth() * house.getHeight());
+	return rating + houseTiles * houseGain + (coverableTiles - houseTiles + otherFreeTiles) * otherGain;
+    }
+
+    @Override
+    public long getLayoutHash() {
+	return layoutHash;
+    }
+
+    @Override
+    public long getCanonicalHash() {
+	// the four hashes are permuted by mirroring, so their minimum is not
+	// changed
+	return Math.min(Math.min(layoutHash, mirroredXHash), Math.min(mirroredYHash, rotatedHash));
     }
    
     @Override
@@ -81,9 +195,195 @@ public abstract class AbstractGameBoard implements IFoEGameboard {
     public void placeBuildingWithoutAnyChecks(int x, int y, TileState building) {
 	for (int ix = 0; ix < building.getWidth(); ix++) {
 	    for (int iy = 0; iy < building.getHeight(); iy++) {
-		setBuildingInternal(x + ix, y + iy, building);
+		replaceTile(x + ix, y + iy, building);
+	    }
+	}
+	onAreaChanged(x, y, building.getWidth(), building.getHeight());
+    }
+
+    @Override
+    public void placeBuildingUndoable(int x, int y, TileState building) {
+	ensureUndoCapacity(building.getWidth() * building.getHeight() + 3);
+	for (int ix = 0; ix < building.getWidth(); ix++) {
+	    for (int iy = 0; iy < building.getHeight(); iy++) {
+		TileState oldBuilding = replaceTile(x + ix, y + iy, building);
+		undoStack[undoStackSize++] = (oldBuilding == null ? OUTSIDE : oldBuilding.ordinal());
+	    }
+	}
+	undoStack[undoStackSize++] = x;
+	undoStack[undoStackSize++] = y;
+	undoStack[undoStackSize++] = building.ordinal();
+	undoablePlacements++;
+	onAreaChanged(x, y, building.getWidth(), building.getHeight());
+    }
+
+    @Override
+    public void undoLastPlacement() {
+	if (undoablePlacements == 0) {
+	    throw new IllegalStateException("There is no placement to undo.");
+	}
+
+	TileState building = BUILDINGS[undoStack[--undoStackSize]];
+	int y = undoStack[--undoStackSize];
+	int x = undoStack[--undoStackSize];
+	// restore tiles in reverse order
+	for (int ix = building.getWidth() - 1; ix >= 0; ix--) {
+	    for (int iy = building.getHeight() - 1; iy >= 0; iy--) {
+		int oldBuilding = undoStack[--undoStackSize];
+		if (oldBuilding != OUTSIDE) {
+		    replaceTile(x + ix, y + iy, BUILDINGS[oldBuilding]);
+		}
 	    }
 	}
+	undoablePlacements--;
+	onAreaChanged(x, y, building.getWidth(), building.getHeight());
+    }
+
+    @Override
+    public int getUndoablePlacements() {
+	return undoablePlacements;
+    }
+
+    @Override
+    public int getPackedSize() {
+	return PackedTiles.size(width, height);
+    }
+
+    @Override
+    public void exportPacked(long[] target, int offset) {
+	int wordsPerRow = PackedTiles.wordsPerRow(width);
+	Arrays.fill(target, offset, offset + getPackedSize(), 0L);
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		int wordIndex = offset + y * wordsPerRow + x / PackedTiles.TILES_PER_WORD;
+		int bitPosition = (x % PackedTiles.TILES_PER_WORD) * 2;
+		target[wordIndex] |= (long) PackedTiles.toCode(getBuildingInternal(x, y)) << bitPosition;
+	    }
+	}
+    }
+
+    @Override
+    public void importPacked(long[] source, int offset) {
+	int wordsPerRow = PackedTiles.wordsPerRow(width);
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		int wordIndex = offset + y * wordsPerRow + x / PackedTiles.TILES_PER_WORD;
+		int bitPosition = (x % PackedTiles.TILES_PER_WORD) * 2;
+		TileState building = PackedTiles.fromCode((int) (source[wordIndex] >>> bitPosition) & 0B11);
+		if (getBuildingInternal(x, y) != building) {
+		    replaceTile(x, y, building);
+		}
+	    }
+	}
+	undoStackSize = 0;
+	undoablePlacements = 0;
+	onAreaChanged(0, 0, width, height);
+    }
+
+    private void ensureUndoCapacity(int additionalEntries) {
+	if (undoStack == null) {
+	    undoStack = new int[Math.max(64, additionalEntries)];
+	} else if (undoStackSize + additionalEntries > undoStack.length) {
+	    undoStack = Arrays.copyOf(undoStack, Math.max(undoStack.length * 2, undoStackSize + additionalEntries));
+	}
+    }
+
+    /**
+     * changes a single tile and updates all counters
+     * 
+     * @param x
+     *            zero based, may be outside of the board
+     * @param y
+     *            zero based, may be outside of the board
+     * @param building
+     *            the new state of that tile
+     * @return the old state of that tile or <code>null</code> if the tile is
+     *         outside of the board (nothing was changed)
+     */
+    private TileState replaceTile(int x, int y, TileState building) {
+	TileState oldBuilding = getBuildingInternal(x, y);
+	if (oldBuilding == null) {
+	    // tile is outside of the board
+	    return null;
+	}
+	setBuildingInternal(x, y, building);
+	rating += building.getValue() - oldBuilding.getValue();
+	if (oldBuilding == TileState.FREE) {
+	    occupiedTiles++;
+	}
+	if (building == TileState.FREE) {
+	    occupiedTiles--;
+	}
+	int mirroredX = width - 1 - x;
+	int mirroredY = height - 1 - y;
+	layoutHash ^= keyDelta(y * width + x, oldBuilding, building);
+	mirroredXHash ^= keyDelta(y * width + mirroredX, oldBuilding, building);
+	mirroredYHash ^= keyDelta(mirroredY * width + x, oldBuilding, building);
+	rotatedHash ^= keyDelta(mirroredY * width + mirroredX, oldBuilding, building);
+	return oldBuilding;
+    }
+
+    /**
+     * @return value to XOR to a Zobrist hash, if the building on the given
+     *         tile is replaced
+     */
+    private long keyDelta(int tileIndex, TileState oldBuilding, TileState building) {
+	return zobristKeys[ZobristKeys.index(tileIndex, oldBuilding)]
+		^ zobristKeys[ZobristKeys.index(tileIndex, building)];
+    }
+
+    /**
+     * called after the tiles of the given area have been changed. Subclasses
+     * may use it to update their own derived data.
+     * 
+     * @param x
+     *            zero based, left border of the area (may be outside)
+     * @param y
+     *            zero based, top border of the area (may be outside)
+     * @param areaWidth
+     *            number of changed columns
+     * @param areaHeight
+     *            number of changed rows
+     */
+    protected void onAreaChanged(int x, int y, int areaWidth, int areaHeight) {
+	// nothing to do by default
+    }
+
+    /**
+     * Two boards are equal, if they have the same size and the same building
+     * on every tile. The implementation doesn't matter.
+     */
+    @Override
+    public boolean equals(Object obj) {
+	if (this == obj) {
+	    return true;
+	}
+	if (!(obj instanceof IFoEGameboard)) {
+	    return false;
+	}
+
+	IFoEGameboard other = (IFoEGameboard) obj;
+	if (width != other.getWidth() || height != other.getHeight() || layoutHash != other.getLayoutHash()
+		|| rating != other.getRating()) {
+	    return false;
+	}
+	// same hash, so it's most likely the same layout
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		if (getBuildingInternal(x, y) != other.getBuilding(x, y)) {
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Don't change a board while it's a member of a hash based collection.
+     */
+    @Override
+    public int hashCode() {
+	return (int) (layoutHash ^ (layoutHash >>> 32));
     }
 
     @Override
@@ -100,6 +400,50 @@ public abstract class AbstractGameBoard implements IFoEGameboard {
 	}
     }
 
+    @Override
+    public boolean canPlaceBuilding(int x, int y, TileState building) {
+	switch (building) {
+	case WAY:
+	    return getBuildingInternal(x, y) == TileState.FREE && (//
+	    containsWayOrCastle(x - 1, y) //
+		    || containsWayOrCastle(x + 1, y) //
+		    || containsWayOrCastle(x, y - 1) //
+		    || containsWayOrCastle(x, y + 1));
+	case CASTLE:
+	    return isBuildingAreaFree(x, y, building);
+	case HOUSE:
+	    return canPlaceHouseHere(x, y, building);
+	default:
+	    return false;
+	}
+    }
+
+    @Override
+    public int countPlacementOptions(TileState building) {
+	return getPlacementOptions(building).size();
+    }
+
+    @Override
+    public int getPlacementOption(TileState building, int index) {
+	return getPlacementOptions(building).get(index).pack();
+    }
+
+    @Override
+    public int getPlacementOptions(TileState building, int[] buffer) {
+	int cnt = 0;
+	for (Tile option : getPlacementOptions(building)) {
+	    buffer[cnt++] = option.pack();
+	}
+	return cnt;
+    }
+
+    @Override
+    public void visitPlacementOptions(TileState building, PlacementOptionVisitor visitor) {
+	for (Tile option : getPlacementOptions(building)) {
+	    visitor.visit(option.getX(), option.getY(), option.getBuilding());
+	}
+    }
+
     /**
      * returns all options to place the castle (assuming the game field has no
      * buildings yet)
@@ -187,7 +531,7 @@ public abstract class AbstractGameBoard implements IFoEGameboard {
 
 	// check bottom (south) border
 	for (int dx = 0; dx < buildingWidth; dx++) {
-	    if (getBuildingInternal(x + dx, y + dim.getHeight() + 1) == TileState.WAY) {
+	    if (getBuildingInternal(x + dx, y + buildingHeight) == TileState.WAY) {
 		return true;
 	    }
 	}
@@ -201,7 +545,7 @@ public abstract class AbstractGameBoard implements IFoEGameboard {
 
 	// check right (east) border
 	for (int dy = 0; dy < buildingHeight; dy++) {
-	    if (getBuildingInternal(x + dim.getWidth() + 1, y + dy) == TileState.WAY) {
+	    if (getBuildingInternal(x + buildingWidth, y + dy) == TileState.WAY) {
 		return true;
 	    }
 	}
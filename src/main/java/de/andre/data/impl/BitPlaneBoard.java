@@ -0,0 +1,435 @@
+package de.andre.data.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.PlacementOptionVisitor;
+import de.andre.data.Tile;
+import de.andre.data.TileState;
+
+/**
+ * Game board that keeps one bit plane per building type. Every row of a plane
+ * is stored in a single <code>long</code> (bit <code>x</code> is the tile in
+ * column <code>x</code>), so most questions about the board can be answered
+ * with some shifts, ANDs and ORs over whole rows instead of probing tile by
+ * tile.
+ * <p>
+ * The placement options for ways and houses are kept as bit planes, too. They
+ * are patched after every placement for the few rows that placement can
+ * influence, so enumerating them never has to look at the whole board.
+ *
+ * @author Andre
+ */
+public class BitPlaneBoard extends AbstractGameBoard implements IFoEGameboard {
+    /** every row has to fit into a single long */
+    public static final int MAX_WIDTH = 64;
+
+    /** bits of all columns within the board */
+    private final long rowMask;
+    private final long[] ways;
+    private final long[] houses;
+    private final long[] castles;
+    /** all free tiles that touch a way or the castle */
+    private final long[] wayOptions;
+    /** all top-left tiles, where a house can be placed */
+    private final long[] houseOptions;
+    /** number of bits set in {@link #wayOptions} */
+    private int wayOptionCount;
+    /** number of bits set in {@link #houseOptions} */
+    private int houseOptionCount;
+
+    public BitPlaneBoard(int width, int height) {
+	super(width, height);
+	if (width > MAX_WIDTH) {
+	    throw new IllegalArgumentException("width (" + width + ") must not exceed " + MAX_WIDTH);
+	}
+	this.rowMask = (width == MAX_WIDTH ? -1L : (1L << width) - 1);
+	this.ways = new long[height];
+	this.houses = new long[height];
+	this.castles = new long[height];
+	this.wayOptions = new long[height];
+	this.houseOptions = new long[height];
+    }
+
+    private BitPlaneBoard(BitPlaneBoard original) {
+	super(original);
+	this.rowMask = original.rowMask;
+	this.ways = original.ways.clone();
+	this.houses = original.houses.clone();
+	this.castles = original.castles.clone();
+	this.wayOptions = original.wayOptions.clone();
+	this.houseOptions = original.houseOptions.clone();
+	this.wayOptionCount = original.wayOptionCount;
+	this.houseOptionCount = original.houseOptionCount;
+    }
+
+    /**
+     * @param y
+     *            zero based row index, may be outside of the board
+     * @return all free tiles of that row (nothing if the row is outside)
+     */
+    private long freeRow(int y) {
+	if (y < 0 || y >= height) {
+	    return 0L;
+	}
+	return ~(ways[y] | houses[y] | castles[y]) & rowMask;
+    }
+
+    /**
+     * @param plane
+     *            the bit plane
+     * @param y
+     *            zero based row index, may be outside of the board
+     * @return the row of that plane (nothing if the row is outside)
+     */
+    private long row(long[] plane, int y) {
+	if (y < 0 || y >= height) {
+	    return 0L;
+	}
+	return plane[y];
+    }
+
+    /**
+     * @param bits
+     *            a row
+     * @param width
+     *            width of the window
+     * @return bit x is set, if any of the bits x .. x + width - 1 is set
+     */
+    private static long anyInWindow(long bits, int width) {
+	long result = bits;
+	for (int dx = 1; dx < width; dx++) {
+	    result |= bits >>> dx;
+	}
+	return result;
+    }
+
+    /**
+     * @param bits
+     *            a row
+     * @param width
+     *            width of the window
+     * @return bit x is set, if all of the bits x .. x + width - 1 are set
+     */
+    private static long allInWindow(long bits, int width) {
+	long result = bits;
+	for (int dx = 1; dx < width; dx++) {
+	    result &= bits >>> dx;
+	}
+	return result;
+    }
+
+    @Override
+    protected TileState getBuildingInternal(int x, int y) {
+	if (0 <= x && x < width && 0 <= y && y < height) {
+	    long bit = 1L << x;
+	    if ((ways[y] & bit) != 0) {
+		return TileState.WAY;
+	    }
+	    if ((houses[y] & bit) != 0) {
+		return TileState.HOUSE;
+	    }
+	    if ((castles[y] & bit) != 0) {
+		return TileState.CASTLE;
+	    }
+	    return TileState.FREE;
+	}
+
+	return null;
+    }
+
+    @Override
+    protected void setBuildingInternal(int x, int y, TileState building) {
+	if (0 <= x && x < width && 0 <= y && y < height) {
+	    long bit = 1L << x;
+	    ways[y] &= ~bit;
+	    houses[y] &= ~bit;
+	    castles[y] &= ~bit;
+	    switch (building) {
+	    case WAY:
+		ways[y] |= bit;
+		break;
+	    case HOUSE:
+		houses[y] |= bit;
+		break;
+	    case CASTLE:
+		castles[y] |= bit;
+		break;
+	    default:
+		// FREE is no plane of its own
+		break;
+	    }
+	}
+    }
+
+    @Override
+    protected void onAreaChanged(int x, int y, int areaWidth, int areaHeight) {
+	// a way option depends on the row itself and its direct neighbours
+	int fromRow = Math.max(0, y - 1);
+	int toRow = Math.min(height - 1, y + areaHeight);
+	for (int row = fromRow; row <= toRow; row++) {
+	    long options = wayOptionsOfRow(row);
+	    wayOptionCount += Long.bitCount(options) - Long.bitCount(wayOptions[row]);
+	    wayOptions[row] = options;
+	}
+
+	// a house option depends on all rows of the house and the rows directly
+	// above and below
+	final TileState house = TileState.HOUSE;
+	fromRow = Math.max(0, y - house.getHeight());
+	toRow = Math.min(height - house.getHeight(), y + areaHeight);
+	for (int row = fromRow; row <= toRow; row++) {
+	    long options = houseOptionsOfRow(row, house);
+	    houseOptionCount += Long.bitCount(options) - Long.bitCount(houseOptions[row]);
+	    houseOptions[row] = options;
+	}
+    }
+
+    @Override
+    public int getRatingUpperBound() {
+	final TileState house = TileState.HOUSE;
+	// all top-left tiles of free areas of the size of a house. It's local,
+	// so the bound of a shared board can be computed by several threads.
+	long[] freeHouseAreas = new long[height];
+	for (int y = 0; y + house.getHeight() <= height; y++) {
+	    long freeArea = rowMask;
+	    for (int dy = 0; dy < house.getHeight(); dy++) {
+		freeArea &= freeRow(y + dy);
+	    }
+	    freeHouseAreas[y] = allInWindow(freeArea, house.getWidth());
+	}
+
+	int coverableTiles = 0;
+	int otherFreeTiles = 0;
+	boolean hasCastle = false;
+	for (int y = 0; y < height; y++) {
+	    // all tiles of this row, that lie in one of the free areas
+	    long areaStarts = 0L;
+	    for (int dy = 0; dy < house.getHeight(); dy++) {
+		int top = y - dy;
+		if (top >= 0 && top + house.getHeight() <= height) {
+		    areaStarts |= freeHouseAreas[top];
+		}
+	    }
+	    long coverable = 0L;
+	    for (int dx = 0; dx < house.getWidth(); dx++) {
+		coverable |= areaStarts << dx;
+	    }
+	    long free = freeRow(y);
+	    coverableTiles += Long.bitCount(free & coverable);
+	    otherFreeTiles += Long.bitCount(free & ~coverable);
+	    hasCastle |= (castles[y] != 0L);
+	}
+	return ratingUpperBound(coverableTiles, otherFreeTiles, hasCastle);
+    }
+
+    @Override
+    public List<Tile> getPlacementOptions(TileState building) {
+	switch (building) {
+	case WAY:
+	    return getWayPlacementOptions();
+	case HOUSE:
+	    return getHousePlacementOptions();
+	default:
+	    return super.getPlacementOptions(building);
+	}
+    }
+
+    @Override
+    public boolean canPlaceBuilding(int x, int y, TileState building) {
+	long[] options = getOptionPlane(building);
+	if (options == null) {
+	    return super.canPlaceBuilding(x, y, building);
+	}
+	return 0 <= x && x < width && 0 <= y && y < height && (options[y] & (1L << x)) != 0;
+    }
+
+    @Override
+    public int countPlacementOptions(TileState building) {
+	switch (building) {
+	case WAY:
+	    return wayOptionCount;
+	case HOUSE:
+	    return houseOptionCount;
+	default:
+	    return super.countPlacementOptions(building);
+	}
+    }
+
+    @Override
+    public int getPlacementOption(TileState building, int index) {
+	long[] options = getOptionPlane(building);
+	if (options == null) {
+	    return super.getPlacementOption(building, index);
+	}
+
+	int remaining = index;
+	for (int y = 0; y < height; y++) {
+	    int cnt = Long.bitCount(options[y]);
+	    if (remaining < cnt) {
+		long row = options[y];
+		for (int i = 0; i < remaining; i++) {
+		    // remove lowest bit
+		    row &= row - 1;
+		}
+		return Tile.pack(Long.numberOfTrailingZeros(row), y, building);
+	    }
+	    remaining -= cnt;
+	}
+	throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + countPlacementOptions(building));
+    }
+
+    @Override
+    public int getPlacementOptions(TileState building, int[] buffer) {
+	long[] options = getOptionPlane(building);
+	if (options == null) {
+	    return super.getPlacementOptions(building, buffer);
+	}
+
+	int cnt = 0;
+	for (int y = 0; y < height; y++) {
+	    long row = options[y];
+	    while (row != 0L) {
+		buffer[cnt++] = Tile.pack(Long.numberOfTrailingZeros(row), y, building);
+		row &= row - 1;
+	    }
+	}
+	return cnt;
+    }
+
+    @Override
+    public void visitPlacementOptions(TileState building, PlacementOptionVisitor visitor) {
+	long[] options = getOptionPlane(building);
+	if (options == null) {
+	    super.visitPlacementOptions(building, visitor);
+	    return;
+	}
+
+	for (int y = 0; y < height; y++) {
+	    long row = options[y];
+	    while (row != 0L) {
+		visitor.visit(Long.numberOfTrailingZeros(row), y, building);
+		row &= row - 1;
+	    }
+	}
+    }
+
+    /**
+     * @param building
+     * @return the incrementally maintained options or <code>null</code> if
+     *         there are none for that building
+     */
+    private long[] getOptionPlane(TileState building) {
+	switch (building) {
+	case WAY:
+	    return wayOptions;
+	case HOUSE:
+	    return houseOptions;
+	default:
+	    return null;
+	}
+    }
+
+    /**
+     * @param y
+     *            zero based row index
+     * @return all free tiles of that row, that touch a way or the castle
+     */
+    private long wayOptionsOfRow(int y) {
+	long center = ways[y] | castles[y];
+	long neighbours = (center << 1) | (center >>> 1) //
+		| row(ways, y - 1) | row(castles, y - 1) //
+		| row(ways, y + 1) | row(castles, y + 1);
+	return neighbours & freeRow(y);
+    }
+
+    /**
+     * @param y
+     *            zero based index of the top row
+     * @param dim
+     *            dimensions of the building
+     * @return all top-left (north-west) most tiles in that row, where a
+     *         building of the given size can be placed. The area has to be
+     *         free and at least one tile at its borders has to be a way.
+     */
+    private long houseOptionsOfRow(int y, TileState dim) {
+	final int buildingWidth = dim.getWidth();
+	final int buildingHeight = dim.getHeight();
+
+	long freeArea = rowMask;
+	long waysLeftOrRight = 0L;
+	for (int dy = 0; dy < buildingHeight; dy++) {
+	    freeArea &= freeRow(y + dy);
+	    waysLeftOrRight |= ways[y + dy];
+	}
+	freeArea = allInWindow(freeArea, buildingWidth);
+	if (freeArea == 0L) {
+	    return 0L;
+	}
+
+	long borderWays = anyInWindow(row(ways, y - 1), buildingWidth) // north
+		| anyInWindow(row(ways, y + buildingHeight), buildingWidth) // south
+		| (waysLeftOrRight << 1) // west
+		| (waysLeftOrRight >>> buildingWidth); // east
+	return freeArea & borderWays;
+    }
+
+    private List<Tile> getWayPlacementOptions() {
+	List<Tile> result = new ArrayList<>();
+	for (int y = 0; y < height; y++) {
+	    addAll(result, y, wayOptions[y], TileState.WAY);
+	}
+	return result;
+    }
+
+    private List<Tile> getHousePlacementOptions() {
+	List<Tile> result = new ArrayList<>();
+	for (int y = 0; y < height; y++) {
+	    addAll(result, y, houseOptions[y], TileState.HOUSE);
+	}
+	return result;
+    }
+
+    private static void addAll(List<Tile> result, int y, long row, TileState building) {
+	while (row != 0L) {
+	    int x = Long.numberOfTrailingZeros(row);
+	    result.add(new Tile(x, y, building));
+	    row &= row - 1;
+	}
+    }
+
+    @Override
+    public void exportPacked(long[] target, int offset) {
+	int wordsPerRow = PackedTiles.wordsPerRow(width);
+	for (int y = 0; y < height; y++) {
+	    // WAY is 01, HOUSE is 10 and CASTLE is 11
+	    long lowBits = ways[y] | castles[y];
+	    long highBits = houses[y] | castles[y];
+	    for (int word = 0; word < wordsPerRow; word++) {
+		int shift = word * PackedTiles.TILES_PER_WORD;
+		target[offset + y * wordsPerRow + word] = spread(lowBits >>> shift) | (spread(highBits >>> shift) << 1);
+	    }
+	}
+    }
+
+    /**
+     * @param bits
+     *            only the lowest 32 bits are used
+     * @return bit i of the given bits is moved to bit 2 * i
+     */
+    private static long spread(long bits) {
+	long result = bits & 0xFFFFFFFFL;
+	result = (result | (result << 16)) & 0x0000FFFF0000FFFFL;
+	result = (result | (result << 8)) & 0x00FF00FF00FF00FFL;
+	result = (result | (result << 4)) & 0x0F0F0F0F0F0F0F0FL;
+	result = (result | (result << 2)) & 0x3333333333333333L;
+	result = (result | (result << 1)) & 0x5555555555555555L;
+	return result;
+    }
+
+    @Override
+    public BitPlaneBoard clone() {
+	return new BitPlaneBoard(this);
+    }
+}
@@ -0,0 +1,94 @@
+package de.andre.data.impl;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.TileState;
+
+/**
+ * Game board that shares its tiles with its clones. The rows are stored in
+ * chunks of some rows each (see {@link PackedTiles}). A clone only copies the references
+ * to the chunks and a chunk is copied not until one of both boards changes it.
+ * So a child board, that differs in a single building from its parent, costs
+ * only the chunks touched by that building. On a 24x20 board that is about
+ * as much as an {@link Integer1DimArrayBoard}, which packs all tiles as well,
+ * the saving grows with the size of the board (about a quarter on 64x64).
+ * <p>
+ * Every board knows the chunks, that only it uses. A clone hands over none of
+ * them and takes the ownership of all chunks from the original, so cloning
+ * changes the original: don't clone a board in several threads at once.
+ *
+ * @author Andre
+ */
+public class CopyOnWriteBoard extends AbstractGameBoard implements IFoEGameboard {
+    private static final int DEFAULT_ROWS_PER_CHUNK = 4;
+    private static final int TILES_PER_WORD = PackedTiles.TILES_PER_WORD;
+
+    private final int wordsPerRow;
+    private final int rowsPerChunk;
+    private final long[][] chunks;
+    /** bit i is set, if chunk i is used by this board only */
+    private long ownedChunks;
+
+    public CopyOnWriteBoard(int width, int height) {
+	super(width, height);
+	this.wordsPerRow = PackedTiles.wordsPerRow(width);
+	// ownership of all chunks has to fit into a single long
+	this.rowsPerChunk = Math.max(DEFAULT_ROWS_PER_CHUNK, MathUtil.ceilDiv(height, Long.SIZE));
+	this.chunks = new long[MathUtil.ceilDiv(height, rowsPerChunk)][wordsPerRow * rowsPerChunk];
+	this.ownedChunks = -1L;
+    }
+
+    private CopyOnWriteBoard(CopyOnWriteBoard original) {
+	super(original);
+	this.wordsPerRow = original.wordsPerRow;
+	this.rowsPerChunk = original.rowsPerChunk;
+	this.chunks = original.chunks.clone();
+	// all chunks are shared from now on
+	this.ownedChunks = 0L;
+	original.ownedChunks = 0L;
+    }
+
+    @Override
+    protected TileState getBuildingInternal(int x, int y) {
+	if (0 <= x && x < width && 0 <= y && y < height) {
+	    long[] chunk = chunks[y / rowsPerChunk];
+	    int wordIndex = (y % rowsPerChunk) * wordsPerRow + x / TILES_PER_WORD;
+	    int bitPosition = (x % TILES_PER_WORD) * 2;
+	    return PackedTiles.fromCode((int) (chunk[wordIndex] >>> bitPosition) & 0B11);
+	}
+
+	return null;
+    }
+
+    @Override
+    protected void setBuildingInternal(int x, int y, TileState building) {
+	if (0 <= x && x < width && 0 <= y && y < height) {
+	    int chunkIndex = y / rowsPerChunk;
+	    long chunkBit = 1L << chunkIndex;
+	    if ((ownedChunks & chunkBit) == 0) {
+		// chunk is shared, so copy it before the first change
+		chunks[chunkIndex] = chunks[chunkIndex].clone();
+		ownedChunks |= chunkBit;
+	    }
+
+	    long[] chunk = chunks[chunkIndex];
+	    int wordIndex = (y % rowsPerChunk) * wordsPerRow + x / TILES_PER_WORD;
+	    int bitPosition = (x % TILES_PER_WORD) * 2;
+	    long cleared = chunk[wordIndex] & ~(0B11L << bitPosition);
+	    chunk[wordIndex] = cleared | ((long) PackedTiles.toCode(building) << bitPosition);
+	}
+    }
+
+    @Override
+    public void exportPacked(long[] target, int offset) {
+	// the chunks are already packed row by row
+	for (int y = 0; y < height; y++) {
+	    System.arraycopy(chunks[y / rowsPerChunk], (y % rowsPerChunk) * wordsPerRow, target,
+		    offset + y * wordsPerRow, wordsPerRow);
+	}
+    }
+
+    @Override
+    public CopyOnWriteBoard clone() {
+	return new CopyOnWriteBoard(this);
+    }
+}
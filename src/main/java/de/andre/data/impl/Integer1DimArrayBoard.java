@@ -13,6 +13,11 @@ public class Integer1DimArrayBoard extends AbstractGameBoard implements IFoEGame
 	this.board = new int[MathUtil.ceilDiv(width2 * height2, 16)];
     }
 
+    private Integer1DimArrayBoard(Integer1DimArrayBoard original) {
+	super(original);
+	this.board = original.board.clone();
+    }
+
     private static TileState toTileState(int building) {
 	switch (building) {
 	case 0B00:
@@ -87,11 +92,6 @@ public class Integer1DimArrayBoard extends AbstractGameBoard implements IFoEGame
 
     @Override
     public Integer1DimArrayBoard clone() {
-	Integer1DimArrayBoard clone = new Integer1DimArrayBoard(width, height);
-	for (int idx = 0; idx < board.length; idx++) {
-	    clone.board[idx] = board[idx];
-	}
-
-	return clone;
+	return new Integer1DimArrayBoard(this);
     }
 }
@@ -0,0 +1,67 @@
+package de.andre.data.impl;
+
+import de.andre.data.TileState;
+
+/**
+ * The packed format of a board: 2 bits per tile, row by row. Every row starts
+ * at a new long, the tile in column x of a row is stored in the bits
+ * <code>2 * (x % 32)</code> and <code>2 * (x % 32) + 1</code> of the long
+ * <code>x / 32</code> of that row.
+ *
+ * @author Andre
+ */
+public class PackedTiles {
+    /** a long is 64 bit long, we need 2 bit per tile */
+    public static final int TILES_PER_WORD = 32;
+
+    private static final TileState[] CODE_TO_BUILDING = { TileState.FREE, TileState.WAY, TileState.HOUSE,
+	    TileState.CASTLE };
+
+    /**
+     * @param width
+     *            width of the board
+     * @return number of longs per row
+     */
+    public static int wordsPerRow(int width) {
+	return MathUtil.ceilDiv(width, TILES_PER_WORD);
+    }
+
+    /**
+     * @param width
+     *            width of the board
+     * @param height
+     *            height of the board
+     * @return number of longs of a packed board
+     */
+    public static int size(int width, int height) {
+	return wordsPerRow(width) * height;
+    }
+
+    /**
+     * @param building
+     * @return the 2 bit code of that building. It's crucial that FREE is 0.
+     */
+    public static int toCode(TileState building) {
+	switch (building) {
+	case FREE:
+	    return 0B00;
+	case WAY:
+	    return 0B01;
+	case HOUSE:
+	    return 0B10;
+	case CASTLE:
+	    return 0B11;
+	default:
+	    throw new RuntimeException("No matching found: " + building);
+	}
+    }
+
+    /**
+     * @param code
+     *            the 2 bit code
+     * @return the building
+     */
+    public static TileState fromCode(int code) {
+	return CODE_TO_BUILDING[code];
+    }
+}
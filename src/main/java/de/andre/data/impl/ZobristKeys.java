@@ -0,0 +1,59 @@
+package de.andre.data.impl;
+
+import de.andre.data.TileState;
+
+/**
+ * Random keys for Zobrist hashing of game boards. There is one key per tile
+ * index and building. The keys are derived from a fixed seed, so they are the
+ * same for every board implementation and every run. A free tile has always
+ * the key 0, so an empty board has the hash 0.
+ * 
+ * @author Andre
+ */
+public class ZobristKeys {
+    private static final int BUILDINGS = TileState.values().length;
+    private static final long SEED = 0x5DEECE66DL;
+
+    private static long[] keys = new long[0];
+
+    /**
+     * @param tiles
+     *            number of tiles of the board
+     * @return keys for at least that much tiles. Use
+     *         {@link #index(int, TileState)} to access a key.
+     */
+    public static synchronized long[] forTiles(int tiles) {
+	if (keys.length < tiles * BUILDINGS) {
+	    long[] newKeys = new long[tiles * BUILDINGS];
+	    for (int idx = 0; idx < newKeys.length; idx++) {
+		if (idx % BUILDINGS != TileState.FREE.ordinal()) {
+		    newKeys[idx] = mix(SEED + idx);
+		}
+	    }
+	    keys = newKeys;
+	}
+	return keys;
+    }
+
+    /**
+     * @param tileIndex
+     *            zero based index of that tile (row by row)
+     * @param building
+     *            the building on that tile
+     * @return index of the key within the array returned by
+     *         {@link #forTiles(int)}
+     */
+    public static int index(int tileIndex, TileState building) {
+	return tileIndex * BUILDINGS + building.ordinal();
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix(long value) {
+	long z = value * 0x9E3779B97F4A7C15L;
+	z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+	z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+	return z ^ (z >>> 31);
+    }
+}
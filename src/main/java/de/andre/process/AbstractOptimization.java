@@ -1,6 +1,21 @@
 package de.andre.process;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,8 +25,16 @@ import de.andre.data.db.DBExperiment;
 import de.andre.data.db.DBExperimentParameter;
 import de.andre.data.db.DBRepository;
 import de.andre.data.db.DBSnapshot;
+import de.andre.data.impl.BitPlaneBoard;
+import de.andre.data.impl.CopyOnWriteBoard;
 import de.andre.data.impl.Integer1DimArrayBoard;
 import de.andre.process.util.BoardVisualizer;
+import de.andre.process.util.Checkpoint;
+import de.andre.process.util.Incumbent;
+import de.andre.process.util.Leaderboard;
+import de.andre.process.util.RunBudget;
+import de.andre.process.util.TranspositionTable;
+import de.andre.process.util.TranspositionTable.ReplacementPolicy;
 import lombok.extern.log4j.Log4j;
 
 @Log4j
@@ -20,12 +43,63 @@ public abstract class AbstractOptimization {
     private int GAMEFIELD_WIDTH = 24;
     @Value("${exp.gamefield.height}")
     private int GAMEFIELD_HEIGHT = 20;
+    @Value("${exp.gamefield.impl}")
+    private String GAMEFIELD_IMPL = "BitPlaneBoard";
+    @Value("${exp.tt.size.bits}")
+    private int TRANSPOSITION_TABLE_SIZE_BITS = 22;
+    @Value("${exp.tt.replacement}")
+    private ReplacementPolicy TRANSPOSITION_TABLE_REPLACEMENT = ReplacementPolicy.PREFER_VISITED;
+    /** number of game fields kept in the leaderboard and saved at the end */
+    @Value("${exp.leaderboard.size}")
+    private int LEADERBOARD_SIZE = 20;
+    /** limits of a run, 0 means unlimited (see {@link RunBudget}) */
+    @Value("${exp.budget.seconds}")
+    private long BUDGET_SECONDS = 0;
+    @Value("${exp.budget.max.boards}")
+    private long BUDGET_MAX_BOARDS = 0;
+    @Value("${exp.budget.max.rollouts}")
+    private long BUDGET_MAX_ROLLOUTS = 0;
+    @Value("${exp.budget.stagnation.seconds}")
+    private long BUDGET_STAGNATION_SECONDS = 0;
+    /** seed of the random generators, 0 means a new one for every run */
+    @Value("${exp.seed}")
+    private long SEED = 0;
+    /** checkpoint of engines, that support them (see {@link Checkpoint}), empty means none */
+    @Value("${exp.checkpoint.file}")
+    private String CHECKPOINT_FILE = "";
+    @Value("${exp.checkpoint.interval.seconds}")
+    private long CHECKPOINT_INTERVAL_SECONDS = 600;
+    /** continue from the checkpoint, if it exists */
+    @Value("${exp.checkpoint.resume}")
+    private boolean CHECKPOINT_RESUME = false;
+    /** time between two checks of the budget */
+    private static final long BUDGET_CHECK_MILLIS = 100;
+    /** time to wait for a cancelled run to save its results */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
 
     @Autowired
     private DBRepository repository;
     private DBExperiment exp;
-    private int maxRatingUntilNow = Integer.MIN_VALUE;
-    private IFoEGameboard bestRatingGamefield;
+    /**
+     * the best game field, it's in the leaderboard as well. It's kept apart,
+     * because it's replaced by a compare-and-set, while the leaderboard adds
+     * under a lock and copies its entries. So every thread sees an
+     * improvement at once, which the engines use for pruning, and the budget
+     * watcher never waits for the leaderboard.
+     */
+    private final Incumbent incumbent = new Incumbent();
+    private Leaderboard leaderboard;
+    private volatile RunBudget budget = new RunBudget(0, 0, 0, 0);
+    /** the thread of the current run or <code>null</code> */
+    private volatile Thread runner;
+    /**
+     * nano time of the next checkpoint, <code>Long.MAX_VALUE</code> after the
+     * last one
+     */
+    private final AtomicLong nextCheckpoint = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicBoolean checkpointPending = new AtomicBoolean(false);
+    /** writes the checkpoints of the current run or <code>null</code> */
+    private volatile ExecutorService checkpointWriter;
 
     protected abstract void start();
 
@@ -37,11 +111,39 @@ public abstract class AbstractOptimization {
 	return GAMEFIELD_HEIGHT;
     }
 
+    /**
+     * @return the configured seed or a random one
+     */
+    protected long createSeed() {
+	return SEED != 0 ? SEED : new Random().nextLong();
+    }
+
     /**
      * @return an empty game field
      */
     protected IFoEGameboard createRandomBoard() {
-	return new Integer1DimArrayBoard(getGamefieldWidth(), getGamefieldHeight());
+	switch (GAMEFIELD_IMPL) {
+	case "CopyOnWriteBoard":
+	    return new CopyOnWriteBoard(getGamefieldWidth(), getGamefieldHeight());
+	case "Integer1DimArrayBoard":
+	    return new Integer1DimArrayBoard(getGamefieldWidth(), getGamefieldHeight());
+	case "BitPlaneBoard":
+	default:
+	    if (getGamefieldWidth() <= BitPlaneBoard.MAX_WIDTH) {
+		return new BitPlaneBoard(getGamefieldWidth(), getGamefieldHeight());
+	    }
+	    return new Integer1DimArrayBoard(getGamefieldWidth(), getGamefieldHeight());
+	}
+    }
+
+    /**
+     * @return a new transposition table configured by the experiment
+     *         parameters
+     */
+    protected TranspositionTable createTranspositionTable() {
+	logParameter("TRANSPOSITION_TABLE_SIZE_BITS", TRANSPOSITION_TABLE_SIZE_BITS);
+	logParameter("TRANSPOSITION_TABLE_REPLACEMENT", TRANSPOSITION_TABLE_REPLACEMENT.name());
+	return new TranspositionTable(TRANSPOSITION_TABLE_SIZE_BITS, TRANSPOSITION_TABLE_REPLACEMENT);
     }
 
     protected void log(String msg) {
@@ -70,37 +172,281 @@ public abstract class AbstractOptimization {
     protected void logAllParameter() {
 	logParameter("GAMEFIELD_WIDTH", GAMEFIELD_WIDTH);
 	logParameter("GAMEFIELD_HEIGHT", GAMEFIELD_HEIGHT);
+	logParameter("GAMEFIELD_IMPL", GAMEFIELD_IMPL);
+	logParameter("LEADERBOARD_SIZE", LEADERBOARD_SIZE);
+	logParameter("BUDGET_SECONDS", BUDGET_SECONDS);
+	logParameter("BUDGET_MAX_BOARDS", BUDGET_MAX_BOARDS);
+	logParameter("BUDGET_MAX_ROLLOUTS", BUDGET_MAX_ROLLOUTS);
+	logParameter("BUDGET_STAGNATION_SECONDS", BUDGET_STAGNATION_SECONDS);
     }
 
     /**
      * evaluate rating for the given game field and will add might add it to the
-     * top-list
+     * top-list. It doesn't block, so it can be called from every thread for
+     * every candidate.
      * 
      * @param gamefield
      *            the game field to evaluate
      */
     protected void addGamefieldToTopList(IFoEGameboard gamefield) {
-	synchronized (this) {
-	    if (gamefield.getRating() > maxRatingUntilNow) {
-		this.maxRatingUntilNow = gamefield.getRating();
-		this.bestRatingGamefield = gamefield;
-	    }
+	incumbent.offer(gamefield);
+	leaderboard.offer(gamefield);
+    }
+
+    /**
+     * Same as {@link #addGamefieldToTopList(IFoEGameboard)}, but for game
+     * fields that will be changed by the caller afterwards. The game field is
+     * only cloned, when it may make it into the top-list, and the incumbent
+     * and the leaderboard share that clone.
+     * 
+     * @param gamefield
+     *            the game field to evaluate
+     */
+    protected void addChangingGamefieldToTopList(IFoEGameboard gamefield) {
+	if (isTopListCandidate(gamefield.getRating())) {
+	    addGamefieldToTopList(gamefield.clone());
+	}
+    }
+
+    /**
+     * @param rating
+     *            rating of a game field
+     * @return <code>false</code> if a game field with that rating won't make
+     *         it into the top-list, so there's no need to offer it
+     */
+    protected boolean isTopListCandidate(int rating) {
+	return rating > incumbent.getRating() || leaderboard.accepts(rating);
+    }
+
+    /**
+     * chooses one of the best game fields found so far to restart from, the
+     * better ones more often
+     *
+     * @param r
+     *            random generator
+     * @return a game field of the top-list or <code>null</code>. Don't change
+     *         it.
+     */
+    protected IFoEGameboard sampleTopGamefield(Random r) {
+	return leaderboard.sample(r);
+    }
+
+    /**
+     * @return rating of the best game field found so far
+     */
+    protected int getMaxRatingUntilNow() {
+	return incumbent.getRating();
+    }
+
+    /**
+     * @return the best game field found so far or <code>null</code>. Don't
+     *         change it.
+     */
+    protected IFoEGameboard getBestRatedGamefield() {
+	Incumbent.Entry best = incumbent.get();
+	return best == null ? null : best.getGamefield();
+    }
+
+    /**
+     * @return <code>true</code> if the run should end as soon as possible.
+     *         It's cheap enough to be checked in every hot loop.
+     */
+    protected boolean isBudgetExhausted() {
+	return budget.isExhausted();
+    }
+
+    /**
+     * @param cnt
+     *            number of game fields evaluated since the last call
+     */
+    protected void countBoards(long cnt) {
+	budget.countBoards(cnt);
+    }
+
+    /**
+     * @param cnt
+     *            number of rollouts done since the last call
+     */
+    protected void countRollouts(long cnt) {
+	budget.countRollouts(cnt);
+    }
+
+    /**
+     * ends the current run as soon as possible, its results are saved as
+     * usual
+     */
+    public void cancel() {
+	budget.cancel();
+    }
+
+    /**
+     * cancels the current run when the application is shut down and waits
+     * until its results are saved
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+	Thread current = runner;
+	if (current != null) {
+	    cancel();
+	    current.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+	}
+    }
+
+    /**
+     * Loads the checkpoint to resume from and adds its best game fields to
+     * the top-list. Engines, that support checkpoints, call it once at their
+     * start, the first checkpoint is due an interval afterwards.
+     *
+     * @param emptyBoard
+     *            all game fields of the checkpoint are clones of this board
+     * @return the checkpoint or <code>null</code> if there is none or resuming
+     *         isn't enabled
+     * @throws IllegalStateException
+     *             if the checkpoint has been written by another engine
+     */
+    protected Checkpoint loadCheckpoint(IFoEGameboard emptyBoard) {
+	logParameter("CHECKPOINT_FILE", CHECKPOINT_FILE);
+	logParameter("CHECKPOINT_INTERVAL_SECONDS", CHECKPOINT_INTERVAL_SECONDS);
+	logParameter("CHECKPOINT_RESUME", String.valueOf(CHECKPOINT_RESUME));
+	if (CHECKPOINT_FILE.isEmpty()) {
+	    return null;
+	}
+	checkpointWriter = Executors.newSingleThreadExecutor(r -> new Thread(r, "CheckpointWriter"));
+	nextCheckpoint.set(nextCheckpointTime());
+
+	Path file = Paths.get(CHECKPOINT_FILE);
+	if (!CHECKPOINT_RESUME || !Files.exists(file)) {
+	    return null;
+	}
+	Checkpoint checkpoint;
+	try {
+	    checkpoint = Checkpoint.read(file, emptyBoard);
+	} catch (IOException e) {
+	    throw new UncheckedIOException("Cannot resume from " + file, e);
+	}
+	if (!checkpoint.getEngine().equals(getClass().getSimpleName())) {
+	    throw new IllegalStateException(file + " is a checkpoint of " + checkpoint.getEngine() + ".");
+	}
+	for (IFoEGameboard gamefield : checkpoint.getTopGamefields()) {
+	    addGamefieldToTopList(gamefield);
+	}
+	log("resumed from " + file + " with " + checkpoint.getGamefields().size() + " game fields, the rating to beat is "
+		+ getMaxRatingUntilNow() + ".");
+	return checkpoint;
+    }
+
+    /**
+     * Writes a checkpoint in the background, if it's due and the last one is
+     * written already. It's cheap enough to be called in every hot loop.
+     *
+     * @param engineState
+     *            adds the state of the engine to the checkpoint. It's called
+     *            by the current thread, so it should just collect references.
+     */
+    protected void checkpointIfDue(Consumer<Checkpoint> engineState) {
+	long due = nextCheckpoint.get();
+	// the next one is scheduled by the thread, that wins the due one. The
+	// swap fails after checkpointNow, so the last checkpoint stays the last.
+	if (System.nanoTime() < due || !nextCheckpoint.compareAndSet(due, nextCheckpointTime())
+		|| !checkpointPending.compareAndSet(false, true)) {
+	    return;
+	}
+
+	ExecutorService writer = checkpointWriter;
+	if (writer == null) {
+	    // the run is ending, checkpointNow writes the last one
+	    checkpointPending.set(false);
+	    return;
+	}
+	Checkpoint checkpoint = createCheckpoint(engineState);
+	try {
+	    writer.execute(() -> {
+		try {
+		    writeCheckpoint(checkpoint);
+		} finally {
+		    checkpointPending.set(false);
+		}
+	    });
+	} catch (RejectedExecutionException e) {
+	    // stopped meanwhile, checkpointNow writes the last one
+	    checkpointPending.set(false);
 	}
     }
 
-    private IFoEGameboard getBestRatedGamefield() {
-	synchronized (this) {
-	    return bestRatingGamefield;
+    /**
+     * writes a checkpoint and waits until it's written, e.g. at the end of a
+     * run. Nothing is done, if there is no checkpoint file.
+     *
+     * @param engineState
+     *            adds the state of the engine to the checkpoint
+     */
+    protected void checkpointNow(Consumer<Checkpoint> engineState) {
+	if (CHECKPOINT_FILE.isEmpty()) {
+	    return;
+	}
+	nextCheckpoint.set(Long.MAX_VALUE);
+	if (!stopCheckpointWriter()) {
+	    return;
 	}
+	writeCheckpoint(createCheckpoint(engineState));
     }
 
-    private int getBestRating() {
-	synchronized (this) {
-	    return maxRatingUntilNow;
+    private Checkpoint createCheckpoint(Consumer<Checkpoint> engineState) {
+	Checkpoint checkpoint = new Checkpoint(getClass().getSimpleName());
+	for (Leaderboard.Entry entry : leaderboard.getEntries()) {
+	    checkpoint.getTopGamefields().add(entry.getGamefield());
 	}
+	engineState.accept(checkpoint);
+	return checkpoint;
+    }
+
+    private void writeCheckpoint(Checkpoint checkpoint) {
+	long startTime = System.nanoTime();
+	Path file = Paths.get(CHECKPOINT_FILE);
+	try {
+	    checkpoint.write(file);
+	    log("checkpoint with " + checkpoint.getGamefields().size() + " game fields written to " + file + " ("
+		    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms).");
+	} catch (IOException e) {
+	    // the run goes on, the last checkpoint is kept
+	    log.error("Cannot write checkpoint " + file, e);
+	}
+    }
+
+    /**
+     * lets the writer finish the checkpoint it's writing and ends its thread
+     *
+     * @return <code>false</code> if the current thread was interrupted while
+     *         waiting
+     */
+    private boolean stopCheckpointWriter() {
+	ExecutorService writer = checkpointWriter;
+	if (writer == null) {
+	    return true;
+	}
+	checkpointWriter = null;
+	writer.shutdown();
+	try {
+	    writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	    return true;
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return false;
+	}
+    }
+
+    private long nextCheckpointTime() {
+	return System.nanoTime() + TimeUnit.SECONDS.toNanos(CHECKPOINT_INTERVAL_SECONDS);
     }
 
     private void logSnapshot(IFoEGameboard board) {
+	saveSnapshot(board);
+
+	// print board to sysout
+	BoardVisualizer.print(board);
+    }
+
+    private void saveSnapshot(IFoEGameboard board) {
 	// collect data
 	int houses = 0;
 	int ways = 0;
@@ -141,9 +487,6 @@ public abstract class AbstractOptimization {
 	snapshot.setEncodedField(encodedField.toString());
 	snapshot.setMemUsage(getMemUsage());
 	repository.save(snapshot);
-
-	// print board to sysout
-	BoardVisualizer.print(board);
     }
 
     private long getMemUsage() {
@@ -154,15 +497,53 @@ public abstract class AbstractOptimization {
     public void runDBExperiment() {
 	initExperiment();
 	logAllParameter();
+	leaderboard = new Leaderboard(LEADERBOARD_SIZE);
+	budget = new RunBudget(BUDGET_SECONDS, BUDGET_MAX_BOARDS, BUDGET_MAX_ROLLOUTS, BUDGET_STAGNATION_SECONDS);
+	runner = Thread.currentThread();
 
 	ProgressLoggingThread logger = new ProgressLoggingThread();
 	logger.start();
+	BudgetWatchingThread watcher = new BudgetWatchingThread();
+	watcher.start();
 
 	try {
 	    start();
 	} finally {
 	    logger.interrupt();
-	    logSnapshot(getBestRatedGamefield());
+	    watcher.interrupt();
+	    // engines, that failed before their last checkpoint, leave the writer running
+	    nextCheckpoint.set(Long.MAX_VALUE);
+	    stopCheckpointWriter();
+	    log("run ended" + (budget.isExhausted() ? " (" + budget.getExhaustedReason() + ")" : "") + " after "
+		    + budget.getElapsedMillis() + " ms, " + budget.getBoards() + " boards and "
+		    + budget.getRollouts() + " rollouts.");
+	    List<Leaderboard.Entry> entries = leaderboard.getEntries();
+	    log("saving the best " + entries.size() + " game fields");
+	    for (Leaderboard.Entry entry : entries) {
+		saveSnapshot(entry.getGamefield());
+	    }
+	    if (!entries.isEmpty()) {
+		BoardVisualizer.print(entries.get(0).getGamefield());
+	    }
+	    runner = null;
+	}
+    }
+
+    private class BudgetWatchingThread extends Thread {
+	public BudgetWatchingThread() {
+	    super("BudgetWatcher");
+	    setDaemon(true);
+	}
+
+	@Override
+	public void run() {
+	    try {
+		while (!budget.isExhausted()) {
+		    TimeUnit.MILLISECONDS.sleep(BUDGET_CHECK_MILLIS);
+		    budget.check(incumbent.getRating());
+		}
+	    } catch (InterruptedException e) {
+	    }
 	}
     }
 
@@ -174,18 +555,19 @@ public abstract class AbstractOptimization {
 	@Override
 	public void run() {
 	    try {
-		IFoEGameboard bestLoggedGamefield = null;
+		Incumbent.Entry bestLogged = null;
 		while (true) {
 		    TimeUnit.SECONDS.sleep(10);
 		    System.gc();
-		    IFoEGameboard currentBestGamefield = getBestRatedGamefield();
-		    if (currentBestGamefield != null && currentBestGamefield.equals(bestLoggedGamefield)) {
+		    // a new incumbent is always a new entry, so there's no need to compare the boards
+		    Incumbent.Entry currentBest = incumbent.get();
+		    if (currentBest != null && currentBest == bestLogged) {
 			// don't repeat myself
-			log("no new best field (current rating to beat is " + getBestRating() + ")");
-		    } else if (currentBestGamefield != null) {
+			log("no new best field (current rating to beat is " + currentBest.getRating() + ")");
+		    } else if (currentBest != null) {
 			log("best field until now is:");
-			bestLoggedGamefield = currentBestGamefield;
-			logSnapshot(bestLoggedGamefield);
+			bestLogged = currentBest;
+			logSnapshot(bestLogged.getGamefield());
 		    }
 		}
 	    } catch (InterruptedException e) {
@@ -1,95 +1,134 @@
 package de.andre.process;
 
-import java.util.Deque;
-import java.util.LinkedList;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
 
 import de.andre.data.IFoEGameboard;
 import de.andre.data.Tile;
 import de.andre.data.TileState;
 import de.andre.process.util.ManuelPlacement;
+import de.andre.process.util.SpillingBoardDeque;
+import de.andre.process.util.TranspositionTable;
 
-@Component
 public class DeepSearchPlacement extends AbstractOptimization {
+    /** number of game fields, that stay in memory after spilling */
     @Value("${exp.max.queue.size.lower.bound}")
     private int MAX_QUEUE_SIZE_LOWER_BOUND = 900_000;
+    /** maximum number of game fields in memory, the others are spilled */
     @Value("${exp.max.queue.size.upper.bound}")
     private int MAX_QUEUE_SIZE_UPPER_BOUND = 2_000_000;
+    /** directory for spilled game fields, empty means the temp directory */
+    @Value("${exp.deep.spill.dir}")
+    private String SPILL_DIRECTORY = "";
+    /** explore only one of the mirror images of a layout */
+    @Value("${exp.deep.canonical.only}")
+    private boolean CANONICAL_ONLY = true;
+    /** drop game fields, that cannot beat the best game field found so far */
+    @Value("${exp.deep.branch.and.bound}")
+    private boolean BRANCH_AND_BOUND = true;
 
     private Random r;
-    private Deque<IFoEGameboard> queue = new LinkedList<>();
-    private boolean queueIsFull = false;
+    private TranspositionTable transpositions;
+    /** all game fields still to expand, stored off-heap or on disk */
+    private SpillingBoardDeque queue;
 
     public void start() {
-	long seed = new Random().nextLong();
+	long seed = createSeed();
 	logParameter("MAX_QUEUE_SIZE_LOWER_BOUND", MAX_QUEUE_SIZE_LOWER_BOUND);
 	logParameter("MAX_QUEUE_SIZE_UPPER_BOUND", MAX_QUEUE_SIZE_UPPER_BOUND);
+	Path spillDirectory = Paths.get(SPILL_DIRECTORY.isEmpty() ? System.getProperty("java.io.tmpdir") : SPILL_DIRECTORY);
+	logParameter("SPILL_DIRECTORY", spillDirectory.toString());
+	logParameter("CANONICAL_ONLY", String.valueOf(CANONICAL_ONLY));
+	logParameter("BRANCH_AND_BOUND", String.valueOf(BRANCH_AND_BOUND));
 	logParameter("random.seed", seed);
 
 	// seed = -6542860481660332438L;
 	r = new Random(seed);
+	transpositions = createTranspositionTable();
 
 	IFoEGameboard startingBoard = createRandomBoard();
-	queue.offer(startingBoard);
-	ManuelPlacement.createAndPrintReference(startingBoard);
+	queue = new SpillingBoardDeque(startingBoard.getPackedSize(), MAX_QUEUE_SIZE_UPPER_BOUND,
+		MAX_QUEUE_SIZE_UPPER_BOUND - MAX_QUEUE_SIZE_LOWER_BOUND, spillDirectory);
+	try {
+	    queue.offerFirst(startingBoard);
+	    ManuelPlacement.createAndPrintReference(startingBoard);
+	    search();
+	} finally {
+	    queue.close();
+	}
+    }
 
-	while (!queue.isEmpty()) {
-	    IFoEGameboard gf = queue.poll();
-	    addGamefieldToTopList(gf);
+    private void search() {
+	// every game field is expanded on this board
+	IFoEGameboard gf = createRandomBoard();
+	while (!isBudgetExhausted() && queue.pollFirst(gf)) {
+	    countBoards(1);
+	    addChangingGamefieldToTopList(gf);
+	    if (isHopeless(gf)) {
+		// the best game field has been improved since gf was offered
+		continue;
+	    }
 
 	    if (gf.getOccupiedTiles() == 0) {
 		// get all options for castle placement
-		List<Tile> options = gf.getPlacementOptions(TileState.CASTLE);
-		for (Tile option : options) {
-		    IFoEGameboard gfClone = gf.clone();
-		    gfClone.placeBuildingWithoutAnyChecks(option.getX(), option.getY(), TileState.CASTLE);
-		    offer(queue, gfClone);
-		}
+		offerChildren(gf, TileState.CASTLE);
 	    } else {
-		// get all options for way placement
-		List<Tile> options = gf.getPlacementOptions(TileState.WAY);
-		for (Tile option : options) {
-		    IFoEGameboard gfClone = gf.clone();
-		    gfClone.placeBuildingWithoutAnyChecks(option.getX(), option.getY(), TileState.WAY);
-		    offer(queue, gfClone);
-		}
-
-		// get all options for house placement
-		options = gf.getPlacementOptions(TileState.HOUSE);
-		for (Tile option : options) {
-		    IFoEGameboard gfClone = gf.clone();
-		    gfClone.placeBuildingWithoutAnyChecks(option.getX(), option.getY(), TileState.HOUSE);
-		    offer(queue, gfClone);
-		}
+		// get all options for way and house placement
+		offerChildren(gf, TileState.WAY);
+		offerChildren(gf, TileState.HOUSE);
 	    }
 	}
     }
 
-    private void offer(Deque<IFoEGameboard> queue, IFoEGameboard gf) {
-	if (queueIsFull) {
-	    if (queue.size() <= MAX_QUEUE_SIZE_LOWER_BOUND) {
-		queueIsFull = false;
+    /**
+     * offers all game fields that are reachable by placing the given building
+     * 
+     * @param gf
+     *            the parent game field. It's changed while the children are
+     *            created, but restored at the end.
+     * @param building
+     *            the building to place
+     */
+    private void offerChildren(IFoEGameboard gf, TileState building) {
+	List<Tile> options = gf.getPlacementOptions(building);
+	for (Tile option : options) {
+	    gf.placeBuildingUndoable(option.getX(), option.getY(), building);
+	    if (isHopeless(gf)) {
+		gf.undoLastPlacement();
+		continue;
 	    }
-
-	    // skip that fields
-	    return;
-	}
-
-	if (queue.size() >= MAX_QUEUE_SIZE_UPPER_BOUND) {
-	    queueIsFull = true;
-	    try {
-		log("Queue is full. So sleep and make GC.");
-		System.gc();
-		TimeUnit.SECONDS.sleep(10);
-	    } catch (InterruptedException e) {
+	    long hash = (CANONICAL_ONLY ? gf.getCanonicalHash() : gf.getLayoutHash());
+	    if (!transpositions.markVisited(hash)) {
+		// layout (or its mirror image) wasn't reached by another order of
+		// placements
+		offer(queue, gf);
 	    }
+	    gf.undoLastPlacement();
 	}
+    }
+
+    /**
+     * @param gf
+     *            a game field
+     * @return <code>true</code> if branch and bound is active and the game
+     *         field (and all game fields reachable from it) cannot beat the
+     *         best game field found so far
+     */
+    private boolean isHopeless(IFoEGameboard gf) {
+	return BRANCH_AND_BOUND && gf.getRatingUpperBound() <= getMaxRatingUntilNow();
+    }
 
+    /**
+     * @param queue
+     *            the queue
+     * @param gf
+     *            the game field to enqueue. It can be changed afterwards.
+     */
+    private void offer(SpillingBoardDeque queue, IFoEGameboard gf) {
 	// offer new field at beginning or the end of queue
 	if (r.nextInt(5) == 0) {
 	    queue.offerLast(gf);
@@ -1,18 +1,22 @@
 package de.andre.process;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
 
 import de.andre.data.IFoEGameboard;
 import de.andre.data.Tile;
 import de.andre.data.TileState;
+import de.andre.process.util.Checkpoint;
 import de.andre.process.util.GameBoardRepository;
 import de.andre.process.util.ManuelPlacement;
 
-@Component
 public class EndlessConstruction extends AbstractOptimization {
     @Value("${exp.endlessconstruction.items.before.shrink}")
     private int ITEMS_BEFORE_SHRINK = 1_000_000;
@@ -20,25 +24,90 @@ public class EndlessConstruction extends AbstractOptimization {
     private int ELEMENTS_TO_NOT_SHRINK = 5;
     @Value("${exp.endlessconstruction.ways.likelyhood}")
     private int WAYS_LIKELYHOOD = 2;
+    /** number of threads, 0 means one per core */
+    @Value("${exp.endlessconstruction.threads}")
+    private int THREADS = 0;
 
     private final GameBoardRepository repository = new GameBoardRepository();
+    /** the random generators of the workers */
+    private final List<Random> randoms = new ArrayList<>();
 
     public void start() {
-	long seed = new Random().nextLong();
+	long seed = createSeed();
 	logParameter("ITEMS_BEFORE_SHRINK", ITEMS_BEFORE_SHRINK);
 	logParameter("ELEMENTS_TO_NOT_SHRINK", ELEMENTS_TO_NOT_SHRINK);
 	logParameter("WAYS_LIKELYHOOD", WAYS_LIKELYHOOD);
+	int threads = (THREADS > 0 ? THREADS : Runtime.getRuntime().availableProcessors());
+	logParameter("THREADS", threads);
 	logParameter("random.seed", seed);
 
 	// seed = -6542860481660332438L;
-	Random r = new Random(seed);
 	IFoEGameboard startingBoard = createRandomBoard();
-	IFoEGameboard currentBoard = startingBoard;
-	repository.add(currentBoard);
+	Checkpoint checkpoint = loadCheckpoint(startingBoard);
+	List<Random> resumedRandoms = new ArrayList<>();
+	if (checkpoint == null) {
+	    repository.add(startingBoard);
+	} else {
+	    for (IFoEGameboard board : checkpoint.getGamefields()) {
+		repository.add(board);
+	    }
+	    repository.setNextStartingKey((int) checkpoint.getValue("nextStartingKey", 0));
+	    resumedRandoms = checkpoint.getRandoms();
+	}
 	ManuelPlacement.createAndPrintReference(startingBoard);
 
 	log("-----  start  ----");
-	while (true) {
+	List<Callable<Void>> workers = new ArrayList<>(threads);
+	for (int idx = 0; idx < threads; idx++) {
+	    // every worker has its own random generator, resumed workers go
+	    // on with theirs
+	    Random r = (idx < resumedRandoms.size() ? resumedRandoms.get(idx)
+		    : new Random(seed ^ (idx * 0x9E3779B97F4A7C15L)));
+	    randoms.add(r);
+	    workers.add(() -> {
+		construct(startingBoard, r);
+		return null;
+	    });
+	}
+
+	ForkJoinPool pool = new ForkJoinPool(threads);
+	try {
+	    for (Future<Void> future : pool.invokeAll(workers)) {
+		future.get();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} catch (ExecutionException e) {
+	    throw new IllegalStateException("Construction failed", e.getCause());
+	} finally {
+	    pool.shutdownNow();
+	}
+	checkpointNow(this::addState);
+    }
+
+    /**
+     * adds the repository and the random generators to a checkpoint
+     */
+    private void addState(Checkpoint checkpoint) {
+	checkpoint.getGamefields().addAll(repository.snapshot());
+	for (Random r : randoms) {
+	    checkpoint.addRandom(r);
+	}
+	checkpoint.setValue("nextStartingKey", repository.getNextStartingKey());
+    }
+
+    /**
+     * places buildings at random and restarts with a board of the repository,
+     * when there is no option left. Runs until the budget is exhausted.
+     *
+     * @param startingBoard
+     *            the empty board, isn't changed
+     * @param r
+     *            random generator, used by the current thread only
+     */
+    private void construct(IFoEGameboard startingBoard, Random r) {
+	IFoEGameboard currentBoard = startingBoard;
+	while (!isBudgetExhausted()) {
 	    // clone board ...
 	    currentBoard = currentBoard.clone();
 
@@ -51,26 +120,30 @@ public class EndlessConstruction extends AbstractOptimization {
 		desiredBuilding = TileState.HOUSE;
 	    }
 
-	    List<Tile> options = currentBoard.getPlacementOptions(desiredBuilding);
-	    if (options.isEmpty()) {
+	    int optionCnt = currentBoard.countPlacementOptions(desiredBuilding);
+	    if (optionCnt == 0) {
 		// start all over
 		currentBoard = repository.nextStartingBoard(r);
 	    } else {
 		// choose one option at random
-		int randomIndex = r.nextInt(options.size());
-		Tile tile = options.get(randomIndex);
-		currentBoard.placeBuildingWithoutAnyChecks(tile.getX(), tile.getY(), desiredBuilding);
+		int randomIndex = r.nextInt(optionCnt);
+		int tile = currentBoard.getPlacementOption(desiredBuilding, randomIndex);
+		currentBoard.placeBuildingWithoutAnyChecks(Tile.unpackX(tile), Tile.unpackY(tile), desiredBuilding);
 	    }
 
 	    // add new board
 	    repository.add(currentBoard);
-	    addGamefieldToTopList(currentBoard);
+	    countBoards(1);
+	    if (isTopListCandidate(currentBoard.getRating())) {
+		addGamefieldToTopList(currentBoard);
+	    }
 
-	    // apply garbage collection every now and then
+	    // drop the worse boards every now and then. The other threads go
+	    // on while one of them shrinks.
 	    if (repository.size() >= ITEMS_BEFORE_SHRINK) {
 		repository.shrink(ELEMENTS_TO_NOT_SHRINK);
-		System.gc();
 	    }
+	    checkpointIfDue(this::addState);
 	}
     }
 }
@@ -0,0 +1,209 @@
+package de.andre.process;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.stereotype.Component;
+
+import de.andre.data.db.DBRepository;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Runs a batch of experiments in a single JVM. Every experiment is an engine
+ * together with its own parameters, these override the <code>exp.*</code>
+ * properties for this experiment only, e.g.
+ *
+ * <pre>
+ * SimulatedAnnealing gamefield.width=10 gamefield.height=9 seed=42 budget.seconds=60
+ * </pre>
+ *
+ * Every experiment gets a new instance of its engine in a child context of
+ * the application, so the experiments don't share any state and each one is
+ * recorded in its own experiment in the database. The engines aren't
+ * components, so the application context itself creates none of them. The
+ * experiments run concurrently, but not more of them than threads of the
+ * scheduler.
+ *
+ * @author Andre
+ */
+@Component
+@Log4j
+public class ExperimentScheduler {
+    private static final List<Class<? extends AbstractOptimization>> ENGINES = Arrays.asList(
+	    EndlessConstruction.class, RandomDeepSearchPlacement.class, RandomDeepSearchPlacement2.class,
+	    DeepSearchPlacement.class, MonteCarloSearchTree.class, ParallelBeamSearch.class,
+	    SimulatedAnnealing.class, GeneticOptimization.class, ProfileDynamicProgramming.class);
+
+    /** number of experiments running at the same time, 0 means one per core */
+    @Value("${exp.batch.threads}")
+    private int THREADS = 0;
+
+    @Autowired
+    private ApplicationContext context;
+    /** not used, but destroyed after this scheduler, so cancelled runs can still save their results */
+    @Autowired
+    private DBRepository repository;
+    private final Set<AbstractOptimization> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * an engine together with the properties, that are overridden
+     */
+    public static final class Experiment {
+	private final Class<? extends AbstractOptimization> engine;
+	private final Map<String, Object> parameters;
+
+	private Experiment(Class<? extends AbstractOptimization> engine, Map<String, Object> parameters) {
+	    this.engine = engine;
+	    this.parameters = parameters;
+	}
+
+	/**
+	 * @param spec
+	 *            the name of the engine followed by <code>key=value</code>
+	 *            pairs separated by whitespace. The keys are relative to
+	 *            <code>exp.</code>.
+	 * @return the experiment
+	 * @throws IllegalArgumentException
+	 *             if the engine is unknown or a parameter isn't a
+	 *             <code>key=value</code> pair
+	 */
+	public static Experiment parse(String spec) {
+	    String[] tokens = spec.trim().split("\\s+");
+	    Class<? extends AbstractOptimization> engine = null;
+	    for (Class<? extends AbstractOptimization> candidate : ENGINES) {
+		if (candidate.getSimpleName().equals(tokens[0])) {
+		    engine = candidate;
+		}
+	    }
+	    if (engine == null) {
+		throw new IllegalArgumentException("Unknown experiment '" + tokens[0] + "'.");
+	    }
+
+	    Map<String, Object> parameters = new LinkedHashMap<>();
+	    for (int idx = 1; idx < tokens.length; idx++) {
+		int separator = tokens[idx].indexOf('=');
+		if (separator <= 0) {
+		    throw new IllegalArgumentException(
+			    "Parameter '" + tokens[idx] + "' of experiment '" + spec + "' must be key=value.");
+		}
+		parameters.put("exp." + tokens[idx].substring(0, separator), tokens[idx].substring(separator + 1));
+	    }
+	    return new Experiment(engine, parameters);
+	}
+
+	/**
+	 * @param specs
+	 *            experiments separated by <code>;</code>
+	 * @return all experiments in the given order
+	 */
+	public static List<Experiment> parseAll(String specs) {
+	    List<Experiment> experiments = new ArrayList<>();
+	    for (String spec : specs.split(";")) {
+		if (!spec.trim().isEmpty()) {
+		    experiments.add(parse(spec));
+		}
+	    }
+	    return experiments;
+	}
+
+	@Override
+	public String toString() {
+	    return engine.getSimpleName() + " " + parameters;
+	}
+    }
+
+    /**
+     * runs all experiments and waits until they have ended
+     *
+     * @param experiments
+     *            the experiments, they are started in the given order
+     */
+    public void runAll(List<Experiment> experiments) {
+	int threads = Math.min(experiments.size(), THREADS > 0 ? THREADS : Runtime.getRuntime().availableProcessors());
+	log.info("running " + experiments.size() + " experiments on " + threads + " threads.");
+	List<Callable<Void>> tasks = new ArrayList<>(experiments.size());
+	for (Experiment experiment : experiments) {
+	    tasks.add(() -> {
+		run(experiment);
+		return null;
+	    });
+	}
+
+	// not a ForkJoinPool: the engines block in their own pools, that would start further experiments
+	ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+	try {
+	    int idx = 0;
+	    for (Future<Void> future : pool.invokeAll(tasks)) {
+		try {
+		    future.get();
+		} catch (ExecutionException e) {
+		    // the other experiments go on
+		    log.error("experiment " + experiments.get(idx) + " failed", e.getCause());
+		}
+		idx++;
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} finally {
+	    pool.shutdown();
+	    try {
+		while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+		    log.info("waiting for " + running.size() + " experiments to end.");
+		}
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+	log.info("all experiments ended.");
+    }
+
+    private void run(Experiment experiment) {
+	log.info("starting experiment " + experiment);
+	try (AnnotationConfigApplicationContext child = new AnnotationConfigApplicationContext()) {
+	    child.setParent(context);
+	    child.getEnvironment().getPropertySources().addFirst(new MapPropertySource("experiment", experiment.parameters));
+	    child.register(experiment.engine);
+	    child.refresh();
+
+	    AbstractOptimization engine = child.getBean(experiment.engine);
+	    running.add(engine);
+	    try {
+		engine.runDBExperiment();
+	    } finally {
+		running.remove(engine);
+	    }
+	}
+    }
+
+    /**
+     * cancels all running experiments and waits until they have saved their
+     * results
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+	for (AbstractOptimization engine : running) {
+	    engine.cancel();
+	}
+	for (AbstractOptimization engine : running) {
+	    engine.shutdown();
+	}
+    }
+}
@@ -0,0 +1,456 @@
+package de.andre.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.springframework.beans.factory.annotation.Value;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.Tile;
+import de.andre.data.TileState;
+import de.andre.data.impl.PackedTiles;
+import de.andre.process.util.ManuelPlacement;
+import de.andre.process.util.TopCandidates;
+
+/**
+ * Genetic algorithm: a population of complete layouts is bred generation by
+ * generation. A child takes a random rectangular region from one parent and
+ * everything else from the other one, then a region may be cleared
+ * (mutation). The child is repaired by building it again on an empty board:
+ * the castle of the first parent, all ways connected to it and every house,
+ * that can be placed by the rules of the board. Finally free areas are
+ * filled with houses (and now and then a way).
+ * <p>
+ * The population is stored in the packed format (see {@link PackedTiles}) in
+ * a single array, so even large populations cost a few megabytes only. The
+ * children are bred and rated by several threads.
+ */
+public class GeneticOptimization extends AbstractOptimization {
+    private static final int LOG_EVERY_GENERATIONS = 10;
+
+    /** number of layouts per generation */
+    @Value("${exp.ga.population}")
+    private int POPULATION = 10_000;
+    /** number of the best layouts, that survive unchanged */
+    @Value("${exp.ga.elite}")
+    private int ELITE = 20;
+    /** number of layouts competing to become a parent */
+    @Value("${exp.ga.tournament}")
+    private int TOURNAMENT = 3;
+    /** probability to clear a region of a child */
+    @Value("${exp.ga.mutation.rate}")
+    private double MUTATION_RATE = 0.3;
+    /** number of threads, 0 means one per core */
+    @Value("${exp.ga.threads}")
+    private int THREADS = 0;
+
+    private int packedSize;
+    private int wordsPerRow;
+    private long[] genomes;
+    private int[] fitness;
+    private long[] nextGenomes;
+    private int[] nextFitness;
+
+    @Override
+    protected void start() {
+	long seed = createSeed();
+	int threads = (THREADS > 0 ? THREADS : Runtime.getRuntime().availableProcessors());
+	logParameter("POPULATION", POPULATION);
+	logParameter("ELITE", ELITE);
+	logParameter("TOURNAMENT", TOURNAMENT);
+	logParameter("MUTATION_RATE", MUTATION_RATE);
+	logParameter("THREADS", threads);
+	logParameter("random.seed", seed);
+
+	// seed = -6542860481660332438L;
+	IFoEGameboard startingBoard = createRandomBoard();
+	ManuelPlacement.createAndPrintReference(startingBoard);
+	packedSize = startingBoard.getPackedSize();
+	wordsPerRow = PackedTiles.wordsPerRow(startingBoard.getWidth());
+	genomes = new long[POPULATION * packedSize];
+	fitness = new int[POPULATION];
+	nextGenomes = new long[POPULATION * packedSize];
+	nextFitness = new int[POPULATION];
+
+	List<Breeder> breeders = new ArrayList<>(threads);
+	for (int idx = 0; idx < threads; idx++) {
+	    // every breeder has its own random generator
+	    Random r = new Random(seed ^ (idx * 0x9E3779B97F4A7C15L));
+	    breeders.add(new Breeder(idx, threads, startingBoard, r));
+	}
+
+	ForkJoinPool pool = new ForkJoinPool(threads);
+	try {
+	    runAll(pool, breeders, 0, true);
+	    swapGenerations();
+	    generationCreated(genomes, fitness, 0);
+	    countBoards(POPULATION);
+	    for (int generation = 1; !isBudgetExhausted(); generation++) {
+		int elite = selectElite();
+		runAll(pool, breeders, elite, false);
+		swapGenerations();
+		generationCreated(genomes, fitness, elite);
+		countBoards(POPULATION - elite);
+		if (generation % LOG_EVERY_GENERATIONS == 0) {
+		    logGeneration(generation);
+		}
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+
+    /**
+     * called for every new generation. Does nothing, it's there for tests.
+     *
+     * @param genomes
+     *            the layouts of the generation, packed one after the other.
+     *            Don't change them.
+     * @param fitness
+     *            the rating of every layout
+     * @param elite
+     *            number of layouts at the beginning, that are copied from
+     *            the generation before
+     */
+    void generationCreated(long[] genomes, int[] fitness, int elite) {
+    }
+
+    /**
+     * fills the next generation from the given index on
+     *
+     * @param initial
+     *            <code>true</code> to construct random layouts instead of
+     *            breeding them
+     */
+    private void runAll(ForkJoinPool pool, List<Breeder> breeders, int fromIndex, boolean initial) {
+	List<Callable<Void>> tasks = new ArrayList<>(breeders.size());
+	for (Breeder breeder : breeders) {
+	    tasks.add(() -> {
+		breeder.fill(fromIndex, initial);
+		return null;
+	    });
+	}
+
+	try {
+	    for (Future<Void> future : pool.invokeAll(tasks)) {
+		future.get();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException("Breeding was interrupted", e);
+	} catch (ExecutionException e) {
+	    throw new IllegalStateException("Breeding failed", e.getCause());
+	}
+    }
+
+    /**
+     * copies the best distinct layouts of the current generation to the
+     * beginning of the next one
+     *
+     * @return number of copied layouts
+     */
+    private int selectElite() {
+	if (ELITE <= 0) {
+	    return 0;
+	}
+	// copies of a layout are offered once only, so the elite is distinct
+	TopCandidates best = new TopCandidates(ELITE);
+	for (int idx = 0; idx < POPULATION; idx++) {
+	    long key = ((long) fitness[idx] << 32) | idx;
+	    if (best.accepts(key)) {
+		best.offer(key, genomeHash(idx), idx);
+	    }
+	}
+
+	TopCandidates elite = TopCandidates.merge(new TopCandidates[] { best }, ELITE);
+	for (int idx = 0; idx < elite.size(); idx++) {
+	    int parent = (int) elite.getPayload(idx);
+	    System.arraycopy(genomes, parent * packedSize, nextGenomes, idx * packedSize, packedSize);
+	    nextFitness[idx] = fitness[parent];
+	}
+	return elite.size();
+    }
+
+    private void swapGenerations() {
+	long[] swapGenomes = genomes;
+	genomes = nextGenomes;
+	nextGenomes = swapGenomes;
+	int[] swapFitness = fitness;
+	fitness = nextFitness;
+	nextFitness = swapFitness;
+    }
+
+    private void logGeneration(int generation) {
+	long sum = 0;
+	int max = Integer.MIN_VALUE;
+	for (int idx = 0; idx < POPULATION; idx++) {
+	    sum += fitness[idx];
+	    max = Math.max(max, fitness[idx]);
+	}
+	log("generation " + generation + ": best " + max + ", mean " + (sum / POPULATION) + ".");
+    }
+
+    /**
+     * @return hash of all tiles of a layout of the current generation
+     */
+    private long genomeHash(int idx) {
+	long hash = 0L;
+	for (int word = idx * packedSize; word < (idx + 1) * packedSize; word++) {
+	    hash = (hash ^ genomes[word]) * 0x9E3779B97F4A7C15L;
+	    hash ^= hash >>> 29;
+	}
+	return hash;
+    }
+
+    /**
+     * Breeds every n-th layout of a generation. Each breeder is used by a
+     * single thread at a time.
+     */
+    private final class Breeder {
+	private final int offset;
+	private final int step;
+	private final Random r;
+	/** the board, every child is built on */
+	private final IFoEGameboard board;
+	private final long[] emptyBoard;
+	private final long[] child;
+	/** reusable buffers of the breadth first search over the ways */
+	private final int[] pending;
+	private final int[] visitedAt;
+	private int visitCounter = 0;
+
+	Breeder(int offset, int step, IFoEGameboard startingBoard, Random r) {
+	    this.offset = offset;
+	    this.step = step;
+	    this.r = r;
+	    this.board = startingBoard.clone();
+	    this.emptyBoard = new long[packedSize];
+	    this.child = new long[packedSize];
+	    this.pending = new int[startingBoard.getWidth() * startingBoard.getHeight()];
+	    this.visitedAt = new int[startingBoard.getWidth() * startingBoard.getHeight()];
+	    startingBoard.exportPacked(emptyBoard, 0);
+	}
+
+	void fill(int fromIndex, boolean initial) {
+	    int first = fromIndex + Math.floorMod(offset - fromIndex, step);
+	    for (int idx = first; idx < POPULATION; idx += step) {
+		if (initial) {
+		    construct();
+		} else {
+		    breed();
+		}
+		board.exportPacked(nextGenomes, idx * packedSize);
+		nextFitness[idx] = board.getRating();
+		if (isTopListCandidate(board.getRating())) {
+		    addChangingGamefieldToTopList(board);
+		}
+	    }
+	}
+
+	/**
+	 * builds a random layout: the castle somewhere, then houses as long as
+	 * possible, otherwise ways
+	 */
+	private void construct() {
+	    board.importPacked(emptyBoard, 0);
+	    placeAtRandom(TileState.CASTLE);
+	    while (placeAtRandom(TileState.HOUSE) || placeAtRandom(TileState.WAY)) {
+		// go on until nothing can be placed anymore
+	    }
+	}
+
+	private void breed() {
+	    int first = selectParent();
+	    int second = selectParent();
+	    System.arraycopy(genomes, first * packedSize, child, 0, packedSize);
+	    copyRegion(genomes, second * packedSize, child);
+	    if (r.nextDouble() < MUTATION_RATE) {
+		copyRegion(emptyBoard, 0, child);
+	    }
+	    repair(first);
+	    // fill the gaps
+	    while (placeAtRandom(TileState.HOUSE) || (r.nextBoolean() && placeAtRandom(TileState.WAY))) {
+		// go on until no house fits and the way is omitted
+	    }
+	}
+
+	/**
+	 * @return the best of some random layouts of the current generation
+	 */
+	private int selectParent() {
+	    int best = r.nextInt(POPULATION);
+	    for (int round = 1; round < TOURNAMENT; round++) {
+		int candidate = r.nextInt(POPULATION);
+		if (fitness[candidate] > fitness[best]) {
+		    best = candidate;
+		}
+	    }
+	    return best;
+	}
+
+	/**
+	 * copies a random rectangular region of the source layout into the
+	 * child. Whole words are combined by masks, so no tile is decoded.
+	 */
+	private void copyRegion(long[] source, int sourceOffset, long[] target) {
+	    int width = board.getWidth();
+	    int height = board.getHeight();
+	    int x0 = r.nextInt(width);
+	    int x1 = x0 + 1 + r.nextInt(width - x0);
+	    int y0 = r.nextInt(height);
+	    int y1 = y0 + 1 + r.nextInt(height - y0);
+	    for (int word = 0; word < wordsPerRow; word++) {
+		long mask = regionMask(word, x0, x1);
+		if (mask == 0L) {
+		    continue;
+		}
+		for (int y = y0; y < y1; y++) {
+		    int idx = y * wordsPerRow + word;
+		    target[idx] = (target[idx] & ~mask) | (source[sourceOffset + idx] & mask);
+		}
+	    }
+	}
+
+	/**
+	 * rebuilds the child on the board, so that all rules are kept. The
+	 * castle is taken from the given parent, then all ways of the child
+	 * connected to it are placed, then every complete house of the child,
+	 * that touches one of these ways.
+	 */
+	private void repair(int parent) {
+	    final TileState castle = TileState.CASTLE;
+	    final TileState house = TileState.HOUSE;
+	    int width = board.getWidth();
+	    int height = board.getHeight();
+	    board.importPacked(emptyBoard, 0);
+
+	    int castleTile = findCastle(genomes, parent * packedSize);
+	    if (castleTile < 0) {
+		return;
+	    }
+	    board.placeBuildingWithoutAnyChecks(castleTile % width, castleTile / width, castle);
+
+	    // breadth first search from the castle over the ways of the child
+	    visitCounter++;
+	    int head = 0;
+	    int tail = 0;
+	    for (int dy = 0; dy < castle.getHeight(); dy++) {
+		for (int dx = 0; dx < castle.getWidth(); dx++) {
+		    pending[tail++] = castleTile + dy * width + dx;
+		    visitedAt[castleTile + dy * width + dx] = visitCounter;
+		}
+	    }
+	    while (head < tail) {
+		int tile = pending[head++];
+		int x = tile % width;
+		int y = tile / width;
+		tail = visitWay(x - 1, y, tail);
+		tail = visitWay(x + 1, y, tail);
+		tail = visitWay(x, y - 1, tail);
+		tail = visitWay(x, y + 1, tail);
+	    }
+
+	    for (int y = 0; y <= height - house.getHeight(); y++) {
+		for (int x = 0; x <= width - house.getWidth(); x++) {
+		    if (getTile(child, x, y) == house && isHouseArea(x, y) && board.canPlaceBuilding(x, y, house)) {
+			board.placeBuildingWithoutAnyChecks(x, y, house);
+		    }
+		}
+	    }
+	}
+
+	/**
+	 * places a way of the child, if it hasn't been visited yet
+	 *
+	 * @return the new end of the pending tiles
+	 */
+	private int visitWay(int x, int y, int tail) {
+	    if (x < 0 || y < 0 || x >= board.getWidth() || y >= board.getHeight()) {
+		return tail;
+	    }
+	    int tile = y * board.getWidth() + x;
+	    if (visitedAt[tile] == visitCounter || getTile(child, x, y) != TileState.WAY
+		    || !board.canPlaceBuilding(x, y, TileState.WAY)) {
+		return tail;
+	    }
+	    visitedAt[tile] = visitCounter;
+	    board.placeBuildingWithoutAnyChecks(x, y, TileState.WAY);
+	    pending[tail++] = tile;
+	    return tail;
+	}
+
+	/**
+	 * @return <code>true</code> if all tiles of a house at that position are
+	 *         houses in the child
+	 */
+	private boolean isHouseArea(int x, int y) {
+	    for (int dy = 0; dy < TileState.HOUSE.getHeight(); dy++) {
+		for (int dx = 0; dx < TileState.HOUSE.getWidth(); dx++) {
+		    if (getTile(child, x + dx, y + dy) != TileState.HOUSE) {
+			return false;
+		    }
+		}
+	    }
+	    return true;
+	}
+
+	/**
+	 * @return the top-left tile of the castle or -1
+	 */
+	private int findCastle(long[] layouts, int layoutOffset) {
+	    int width = board.getWidth();
+	    for (int y = 0; y < board.getHeight(); y++) {
+		for (int x = 0; x < width; x++) {
+		    if (getTile(layouts, layoutOffset, x, y) == TileState.CASTLE) {
+			return y * width + x;
+		    }
+		}
+	    }
+	    return -1;
+	}
+
+	private TileState getTile(long[] layout, int x, int y) {
+	    return getTile(layout, 0, x, y);
+	}
+
+	private TileState getTile(long[] layouts, int layoutOffset, int x, int y) {
+	    long word = layouts[layoutOffset + y * wordsPerRow + x / PackedTiles.TILES_PER_WORD];
+	    return PackedTiles.fromCode((int) (word >>> ((x % PackedTiles.TILES_PER_WORD) * 2)) & 0B11);
+	}
+
+	private boolean placeAtRandom(TileState building) {
+	    int optionCnt = board.countPlacementOptions(building);
+	    if (optionCnt == 0) {
+		return false;
+	    }
+	    int option = board.getPlacementOption(building, r.nextInt(optionCnt));
+	    board.placeBuildingWithoutAnyChecks(Tile.unpackX(option), Tile.unpackY(option), building);
+	    return true;
+	}
+    }
+
+    /**
+     * @param word
+     *            index of a word within a row
+     * @param x0
+     *            first column of the region
+     * @param x1
+     *            first column after the region
+     * @return the bits of that word, that belong to the columns of the region
+     */
+    static long regionMask(int word, int x0, int x1) {
+	int firstTile = word * PackedTiles.TILES_PER_WORD;
+	int from = Math.max(x0, firstTile) - firstTile;
+	int to = Math.min(x1, firstTile + PackedTiles.TILES_PER_WORD) - firstTile;
+	if (from >= to) {
+	    return 0L;
+	}
+	long bits = (to - from == PackedTiles.TILES_PER_WORD ? -1L : (1L << (2 * (to - from))) - 1);
+	return bits << (2 * from);
+    }
+}
@@ -1,33 +1,86 @@
 package de.andre.process;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
 
 import de.andre.data.IFoEGameboard;
 import de.andre.data.Tile;
 import de.andre.data.TileState;
 import de.andre.process.util.ManuelPlacement;
+import de.andre.process.util.TranspositionTable;
+import de.andre.process.util.TranspositionTable.ReplacementPolicy;
 
-@Component
+/**
+ * UCT search (Monte Carlo tree search with UCB1). Every thread owns a search
+ * tree of its own (root parallelization). After every turn the statistics of
+ * the moves at the roots are merged, the most visited move is taken and every
+ * tree continues with the subtree of that move.
+ * <p>
+ * A child is created not until it's selected, and the number of children a
+ * node considers grows with its visits (progressive widening).
+ * <p>
+ * The same layout is reached by different orders of placements. Every tree
+ * keeps the playdowns of its nodes in a transposition table by layout hash,
+ * so a node is rated by the playdowns of all its transpositions. The tables
+ * aren't shared between the trees, so a run is still reproducible.
+ */
 public class MonteCarloSearchTree extends AbstractOptimization {
+    /** buildings to place after the castle, houses first */
+    private static final TileState[] NEXT_LEVEL_BUILDINGS = { TileState.HOUSE, TileState.WAY };
 
+    /** number of placements each search tree simulates per turn */
     @Value("${exp.mc.max.options.per.turn}")
     private int MAX_OPTIONS_PER_TURN = 10000;
-    private Random r;
+    /** number of search trees (and threads), 0 means one per core */
+    @Value("${exp.mc.parallelism}")
+    private int PARALLELISM = 0;
+    /** exploration constant of UCB1 */
+    @Value("${exp.mc.exploration}")
+    private double EXPLORATION = 1.4;
+    /**
+     * progressive widening: a node with n visits considers at most
+     * WIDENING_CONSTANT * n ^ WIDENING_EXPONENT children
+     */
+    @Value("${exp.mc.widening.constant}")
+    private double WIDENING_CONSTANT = 2.0;
+    @Value("${exp.mc.widening.exponent}")
+    private double WIDENING_EXPONENT = 0.5;
+    /** every search tree has a transposition table with 2^bits slots */
+    @Value("${exp.mc.tt.size.bits}")
+    private int TRANSPOSITION_TABLE_SIZE_BITS = 18;
+    private ForkJoinPool pool;
 
     @Override
     protected void start() {
-	long seed = new Random().nextLong();
+	long seed = createSeed();
+	int parallelism = (PARALLELISM > 0 ? PARALLELISM : Runtime.getRuntime().availableProcessors());
 	logParameter("MAX_OPTIONS_PER_TURN", MAX_OPTIONS_PER_TURN);
+	logParameter("PARALLELISM", parallelism);
+	logParameter("EXPLORATION", EXPLORATION);
+	logParameter("WIDENING_CONSTANT", WIDENING_CONSTANT);
+	logParameter("WIDENING_EXPONENT", WIDENING_EXPONENT);
+	logParameter("MC_TRANSPOSITION_TABLE_SIZE_BITS", TRANSPOSITION_TABLE_SIZE_BITS);
 	logParameter("random.seed", seed);
 
 	// seed = -6542860481660332438L;
-	r = new Random(seed);
+	pool = new ForkJoinPool(parallelism);
+	try {
+	    search(seed, parallelism);
+	} finally {
+	    pool.shutdown();
+	}
+    }
 
+    private void search(long seed, int numberOfTrees) {
 	IFoEGameboard startingBoard = createRandomBoard();
 
 	// print my reference
@@ -37,107 +90,131 @@ public class MonteCarloSearchTree extends AbstractOptimization {
 	IFoEGameboard baseBoard = placeCastle(startingBoard);
 	addGamefieldToTopList(baseBoard);
 
-	while (true) {
-	    // generate all first level options and boards
-	    List<IFoEGameboard> allNextLevelBoards = createNextLevelBoards(baseBoard);
-	    if (allNextLevelBoards.isEmpty()) {
+	List<SearchTree> trees = new ArrayList<>(numberOfTrees);
+	for (int idx = 0; idx < numberOfTrees; idx++) {
+	    // every tree has its own random generator, so the result depends
+	    // on the seed and the number of trees only
+	    trees.add(new SearchTree(baseBoard.clone(), new Random(seed ^ (idx * 0x9E3779B97F4A7C15L))));
+	}
+
+	while (!isBudgetExhausted()) {
+	    growTrees(trees);
+
+	    MoveStatistics bestMove = chooseMove(trees);
+	    if (bestMove == null) {
 		// exit loop, because no other options are available
 		System.err.println("finished");
 		return;
 	    }
 
-	    int maxOptionsPerBoard = MAX_OPTIONS_PER_TURN / allNextLevelBoards.size();
-	    if (maxOptionsPerBoard < 1) {
-		maxOptionsPerBoard = 1;
+	    // go with best move into the next iteration
+	    int move = bestMove.move;
+	    for (SearchTree tree : trees) {
+		tree.advance(move);
 	    }
+	    baseBoard.placeBuildingWithoutAnyChecks(Tile.unpackX(move), Tile.unpackY(move), Tile.unpackBuilding(move));
+	    addChangingGamefieldToTopList(baseBoard);
+	}
+    }
 
-	    EvaluationRecord bestRecord = null;
-	    for (IFoEGameboard board : allNextLevelBoards) {
-		EvaluationRecord record = evaluateBoard(board, maxOptionsPerBoard);
+    /**
+     * runs the simulations of the current turn, one tree per thread
+     */
+    private void growTrees(List<SearchTree> trees) {
+	List<Callable<Void>> tasks = new ArrayList<>(trees.size());
+	for (SearchTree tree : trees) {
+	    tasks.add(() -> {
+		tree.grow(MAX_OPTIONS_PER_TURN);
+		return null;
+	    });
+	}
 
-		if (record.isBetterThen(bestRecord)) {
-		    bestRecord = record;
-		}
+	try {
+	    for (Future<Void> future : pool.invokeAll(tasks)) {
+		future.get();
 	    }
-
-	    // go with best board into the next iteration
-	    baseBoard = bestRecord.baseBoard;
-	    addGamefieldToTopList(baseBoard);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException("Search was interrupted", e);
+	} catch (ExecutionException e) {
+	    throw new IllegalStateException("Search failed", e.getCause());
 	}
     }
 
-    private EvaluationRecord evaluateBoard(IFoEGameboard baseBoard, int maxOptions) {
-	EvaluationRecord record = new EvaluationRecord(baseBoard);
-	int sumOptionsDone = 0;
-	while (sumOptionsDone < maxOptions) {
-	    // simulate one complete game with all actions at random until there
-	    // are no options left
-	    PlaydownRecord playdownRec = playdown(baseBoard.clone());
-	    
-	    record.numPlaydowns++;
-	    record.sumScore += playdownRec.score;
-
-	    sumOptionsDone += playdownRec.placedBuildings;
+    /**
+     * merges the statistics of the moves at the roots of all trees
+     *
+     * @return the move with the most visits (the highest sum of scores breaks
+     *         ties) or <code>null</code> if there is no move left
+     */
+    private MoveStatistics chooseMove(List<SearchTree> trees) {
+	// trees and moves are visited in a fixed order, so the result doesn't
+	// depend on the scheduling of the threads
+	Map<Integer, MoveStatistics> moves = new LinkedHashMap<>();
+	for (SearchTree tree : trees) {
+	    Node root = tree.root;
+	    for (int idx = 0; idx < root.expandedChildren; idx++) {
+		Node child = root.children[idx];
+		MoveStatistics statistics = moves.get(root.moves[idx]);
+		if (statistics == null) {
+		    statistics = new MoveStatistics(root.moves[idx]);
+		    moves.put(root.moves[idx], statistics);
+		}
+		statistics.visits += child.visits;
+		statistics.sumScore += child.sumScore;
+	    }
+	}
 
-	    if (playdownRec.placedBuildings == 0) {
-		// end loop
-		sumOptionsDone = maxOptions;
+	MoveStatistics bestMove = null;
+	for (MoveStatistics statistics : moves.values()) {
+	    if (statistics.isBetterThen(bestMove)) {
+		bestMove = statistics;
 	    }
 	}
-	return record;
+	return bestMove;
     }
 
-    private PlaydownRecord playdown(IFoEGameboard board) {
+    /**
+     * @param board
+     *            the board to start with. It will be changed during the
+     *            simulation, but is restored at the end.
+     * @param r
+     *            random generator, used by the current thread only
+     * @return the simulation result
+     */
+    private PlaydownRecord playdown(IFoEGameboard board, Random r) {
 	int optionsTaken = 0;
 	int optionCnt = 1;
 	while (optionCnt > 0) {
-	    List<Tile> houseOptions = board.getPlacementOptions(TileState.HOUSE);
-	    List<Tile> wayOptions = board.getPlacementOptions(TileState.WAY);
-	    optionCnt = houseOptions.size() + wayOptions.size();
+	    int houseOptionCnt = board.countPlacementOptions(TileState.HOUSE);
+	    int wayOptionCnt = board.countPlacementOptions(TileState.WAY);
+	    optionCnt = houseOptionCnt + wayOptionCnt;
 	    if (optionCnt > 0) {
 		// choose one action
 		int randomOptionIdx = r.nextInt(optionCnt);
-		if (randomOptionIdx < houseOptions.size()) {
+		int option;
+		if (randomOptionIdx < houseOptionCnt) {
 		    // build an house
-		    Tile option = houseOptions.get(randomOptionIdx);
-		    board.placeBuildingWithoutAnyChecks(option.getX(), option.getY(), TileState.HOUSE);
+		    option = board.getPlacementOption(TileState.HOUSE, randomOptionIdx);
 		} else {
 		    // build an way
-		    randomOptionIdx -= houseOptions.size();
-		    Tile option = wayOptions.get(randomOptionIdx);
-		    board.placeBuildingWithoutAnyChecks(option.getX(), option.getY(), TileState.WAY);
+		    option = board.getPlacementOption(TileState.WAY, randomOptionIdx - houseOptionCnt);
 		}
+		board.placeBuildingUndoable(Tile.unpackX(option), Tile.unpackY(option), Tile.unpackBuilding(option));
 		optionsTaken++;
 	    }
 	}
-	addGamefieldToTopList(board);
+	addChangingGamefieldToTopList(board);
 
 	PlaydownRecord result = new PlaydownRecord();
 	result.placedBuildings = optionsTaken;
 	result.score = board.getRating();
-	return result;
-    }
 
-    /**
-     * @param baseBoard
-     * @return all collection of all boards reachable with one move (placement)
-     */
-    private List<IFoEGameboard> createNextLevelBoards(IFoEGameboard baseBoard) {
-	ArrayList<IFoEGameboard> firstLevelBoards = new ArrayList<>();
-	List<Tile> houseOptions = baseBoard.getPlacementOptions(TileState.HOUSE);
-	for (Tile option : houseOptions) {
-	    IFoEGameboard gfClone = baseBoard.clone();
-	    gfClone.placeBuildingWithoutAnyChecks(option.getX(), option.getY(), TileState.HOUSE);
-	    firstLevelBoards.add(gfClone);
-	}
-
-	List<Tile> wayOptions = baseBoard.getPlacementOptions(TileState.WAY);
-	for (Tile option : wayOptions) {
-	    IFoEGameboard gfClone = baseBoard.clone();
-	    gfClone.placeBuildingWithoutAnyChecks(option.getX(), option.getY(), TileState.WAY);
-	    firstLevelBoards.add(gfClone);
-	}
-	return firstLevelBoards;
+	// restore the board
+	for (int idx = 0; idx < optionsTaken; idx++) {
+	    board.undoLastPlacement();
+	}
+	return result;
     }
 
     private IFoEGameboard placeCastle(IFoEGameboard startingBoard) {
@@ -149,33 +226,239 @@ public class MonteCarloSearchTree extends AbstractOptimization {
 	return gfClone;
     }
 
+    /**
+     * A search tree with its own board and random generator. It's used by a
+     * single thread at a time.
+     */
+    private final class SearchTree {
+	/** the board of the root, changed during a simulation only */
+	private final IFoEGameboard board;
+	private final Random r;
+	/** playdowns per layout, so transpositions share their statistics */
+	private final TranspositionTable transpositions;
+	private Node root;
+	/** all nodes from the root to the current node */
+	private final Node[] path;
+	/** range of all scores seen, used to normalize the rewards to [0, 1] */
+	private int minScore = Integer.MAX_VALUE;
+	private int maxScore = Integer.MIN_VALUE;
+
+	SearchTree(IFoEGameboard board, Random r) {
+	    this.board = board;
+	    this.r = r;
+	    this.transpositions = new TranspositionTable(TRANSPOSITION_TABLE_SIZE_BITS,
+		    ReplacementPolicy.PREFER_VISITED);
+	    this.root = new Node(board.getLayoutHash());
+	    // every placement occupies at least one tile
+	    this.path = new Node[board.getWidth() * board.getHeight() + 1];
+	}
+
+	/**
+	 * runs simulations until the given number of placements is reached
+	 */
+	void grow(int maxOptions) {
+	    int sumOptionsDone = 0;
+	    while (sumOptionsDone < maxOptions && !isBudgetExhausted()) {
+		sumOptionsDone += simulate();
+		countRollouts(1);
+	    }
+	}
+
+	/**
+	 * one round of selection, expansion, playdown and backpropagation
+	 *
+	 * @return number of placements done, at least 1
+	 */
+	private int simulate() {
+	    // selection: descend until a new node is added or the game ends
+	    int pathLength = 0;
+	    Node node = root;
+	    path[pathLength++] = node;
+	    while (true) {
+		if (node.moves == null) {
+		    node.expand(board);
+		}
+		if (node.moves.length == 0) {
+		    // no options left
+		    break;
+		}
+
+		boolean isNew = node.expandedChildren < node.moves.length
+			&& node.expandedChildren < maxChildren(node.visits);
+		int childIdx = (isNew ? node.addMove(r) : selectChild(node));
+		int move = node.moves[childIdx];
+		board.placeBuildingUndoable(Tile.unpackX(move), Tile.unpackY(move), Tile.unpackBuilding(move));
+		if (isNew) {
+		    node.children[childIdx] = new Node(board.getLayoutHash());
+		}
+		node = node.children[childIdx];
+		path[pathLength++] = node;
+		if (isNew) {
+		    // expansion: add a single node per simulation
+		    break;
+		}
+	    }
+
+	    PlaydownRecord playdownRec = playdown(board, r);
+	    int score = playdownRec.score;
+	    minScore = Math.min(minScore, score);
+	    maxScore = Math.max(maxScore, score);
+
+	    // backpropagation
+	    for (int idx = 0; idx < pathLength; idx++) {
+		path[idx].visits++;
+		path[idx].sumScore += score;
+		transpositions.addPlaydown(path[idx].hash, score);
+	    }
+
+	    // restore the board
+	    int treePlacements = pathLength - 1;
+	    for (int idx = 0; idx < treePlacements; idx++) {
+		board.undoLastPlacement();
+	    }
+	    return Math.max(1, treePlacements + playdownRec.placedBuildings);
+	}
+
+	/**
+	 * @param visits
+	 *            number of visits of a node
+	 * @return number of children that node may have (at least 1)
+	 */
+	private int maxChildren(int visits) {
+	    return Math.max(1, (int) Math.ceil(WIDENING_CONSTANT * Math.pow(visits, WIDENING_EXPONENT)));
+	}
+
+	/**
+	 * @param node
+	 *            a node with all children added, that it may have by now
+	 * @return index of the child with the highest UCB1 value. The reward of
+	 *         a child is the mean score of all playdowns of its layout, the
+	 *         exploration term depends on the visits of the child only.
+	 */
+	private int selectChild(Node node) {
+	    double logVisits = Math.log(node.visits);
+	    double scoreRange = Math.max(1, maxScore - minScore);
+	    int bestIdx = 0;
+	    double bestValue = Double.NEGATIVE_INFINITY;
+	    for (int idx = 0; idx < node.expandedChildren; idx++) {
+		Node child = node.children[idx];
+		double reward = (meanScore(child) - minScore) / scoreRange;
+		double value = reward + EXPLORATION * Math.sqrt(logVisits / child.visits);
+		if (value > bestValue) {
+		    bestValue = value;
+		    bestIdx = idx;
+		}
+	    }
+	    return bestIdx;
+	}
+
+	/**
+	 * @return mean score of the playdowns of the node and its
+	 *         transpositions. The table may have lost the layout, the
+	 *         statistics of the node are used then.
+	 */
+	private double meanScore(Node node) {
+	    int visits = transpositions.getVisits(node.hash);
+	    if (visits > node.visits) {
+		return transpositions.getRatingSum(node.hash) / (double) visits;
+	    }
+	    return node.sumScore / (double) node.visits;
+	}
+
+	/**
+	 * places the move and keeps its subtree (if any) as new root
+	 */
+	void advance(int move) {
+	    Node newRoot = null;
+	    for (int idx = 0; idx < root.expandedChildren; idx++) {
+		if (root.moves[idx] == move) {
+		    newRoot = root.children[idx];
+		}
+	    }
+	    board.placeBuildingWithoutAnyChecks(Tile.unpackX(move), Tile.unpackY(move), Tile.unpackBuilding(move));
+	    root = (newRoot != null ? newRoot : new Node(board.getLayoutHash()));
+	}
+    }
+
+    private static final class Node {
+	/** layout hash of the board at that node */
+	private final long hash;
+	/**
+	 * all moves of that node packed as
+	 * {@link Tile#pack(int, int, TileState)}, <code>null</code> until the
+	 * node is expanded. The first {@link #expandedChildren} moves have a
+	 * child.
+	 */
+	private int[] moves;
+	private Node[] children;
+	private int expandedChildren = 0;
+	private int visits = 0;
+	private long sumScore = 0;
+
+	Node(long hash) {
+	    this.hash = hash;
+	}
+
+	/**
+	 * collects all moves of the given board
+	 */
+	void expand(IFoEGameboard board) {
+	    int cnt = 0;
+	    for (TileState building : NEXT_LEVEL_BUILDINGS) {
+		cnt += board.countPlacementOptions(building);
+	    }
+	    moves = new int[cnt];
+	    children = new Node[cnt];
+
+	    int[] buffer = new int[cnt];
+	    int offset = 0;
+	    for (TileState building : NEXT_LEVEL_BUILDINGS) {
+		int buildingCnt = board.getPlacementOptions(building, buffer);
+		System.arraycopy(buffer, 0, moves, offset, buildingCnt);
+		offset += buildingCnt;
+	    }
+	}
+
+	/**
+	 * chooses one of the remaining moves at random for a new child. The
+	 * child itself is created by the caller, after the move is placed.
+	 *
+	 * @return index of the new child
+	 */
+	int addMove(Random r) {
+	    int idx = expandedChildren;
+	    int swapIdx = idx + r.nextInt(moves.length - idx);
+	    int move = moves[swapIdx];
+	    moves[swapIdx] = moves[idx];
+	    moves[idx] = move;
+	    expandedChildren++;
+	    return idx;
+	}
+    }
+
     private static final class PlaydownRecord {
 	int placedBuildings = 0;
 	int score = 0;
     }
 
-    private static final class EvaluationRecord {
-	private final IFoEGameboard baseBoard;
-	private int sumScore = 0;
-	private int numPlaydowns = 0;
+    private static final class MoveStatistics {
+	/** packed as {@link Tile#pack(int, int, TileState)} */
+	private final int move;
+	private long sumScore = 0;
+	private long visits = 0;
 
-	public EvaluationRecord(IFoEGameboard baseBoard) {
-	    this.baseBoard = baseBoard;
+	public MoveStatistics(int move) {
+	    this.move = move;
 	}
 
-	public boolean isBetterThen(EvaluationRecord oldRecord) {
-	    if (oldRecord == null) {
-		return true;
-	    }
-	    if (oldRecord.numPlaydowns == 0) {
+	public boolean isBetterThen(MoveStatistics oldStatistics) {
+	    if (oldStatistics == null) {
 		return true;
 	    }
-	    if (this.numPlaydowns == 0) {
-		return false;
+	    if (visits != oldStatistics.visits) {
+		return visits > oldStatistics.visits;
 	    }
-	    double oldAvgScore = oldRecord.sumScore / (double) oldRecord.numPlaydowns;
-	    double avgScore = this.sumScore / (double) this.numPlaydowns;
-	    return (avgScore > oldAvgScore);
+	    return sumScore > oldStatistics.sumScore;
 	}
     }
 }
@@ -0,0 +1,229 @@
+package de.andre.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.springframework.beans.factory.annotation.Value;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.Tile;
+import de.andre.data.TileState;
+import de.andre.process.util.ManuelPlacement;
+import de.andre.process.util.TopCandidates;
+
+/**
+ * Beam search: every level contains the best game fields with the same number
+ * of placed buildings. All children of a level are created in parallel, every
+ * thread keeps its own top candidates and these are merged into the next
+ * level. Candidates are kept as parent and move, so only the boards that make
+ * it into the next level are cloned.
+ * <p>
+ * Layouts with the same rating are ordered by a random tie-break that changes
+ * on every restart, so every restart explores another beam.
+ */
+public class ParallelBeamSearch extends AbstractOptimization {
+    private static final TileState[] CASTLE_ONLY = { TileState.CASTLE };
+    /** buildings to place after the castle, houses first */
+    private static final TileState[] NEXT_LEVEL_BUILDINGS = { TileState.HOUSE, TileState.WAY };
+    /** the tie-break has 31 bits */
+    private static final long MAX_TIE_BREAK = 0x7FFFFFFFL;
+
+    /** number of game fields per level */
+    @Value("${exp.beam.width}")
+    private int BEAM_WIDTH = 2000;
+    /** number of threads, 0 means one per core */
+    @Value("${exp.beam.parallelism}")
+    private int PARALLELISM = 0;
+
+    private ForkJoinPool pool;
+
+    @Override
+    protected void start() {
+	long seed = createSeed();
+	int parallelism = (PARALLELISM > 0 ? PARALLELISM : Runtime.getRuntime().availableProcessors());
+	logParameter("BEAM_WIDTH", BEAM_WIDTH);
+	logParameter("PARALLELISM", parallelism);
+	logParameter("random.seed", seed);
+
+	// seed = -6542860481660332438L;
+	Random r = new Random(seed);
+	pool = new ForkJoinPool(parallelism);
+	try {
+	    IFoEGameboard startingBoard = createRandomBoard();
+	    ManuelPlacement.createAndPrintReference(startingBoard);
+
+	    Worker[] workers = new Worker[parallelism];
+	    for (int idx = 0; idx < workers.length; idx++) {
+		workers[idx] = new Worker(idx, parallelism, startingBoard);
+	    }
+
+	    for (int restart = 1; !isBudgetExhausted(); restart++) {
+		int levels = search(startingBoard, workers, r.nextLong());
+		log("restart " + restart + " after " + levels + " levels.");
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+    }
+
+    /**
+     * runs a beam search until no game field of the beam can be extended or
+     * the budget is exhausted
+     *
+     * @param startingBoard
+     *            the empty board
+     * @param workers
+     *            one worker per thread
+     * @param tieBreakSeed
+     *            seed of the tie-breaks
+     * @return number of levels
+     */
+    private int search(IFoEGameboard startingBoard, Worker[] workers, long tieBreakSeed) {
+	List<IFoEGameboard> beam = new ArrayList<>();
+	beam.add(startingBoard);
+
+	int levels = 0;
+	while (!isBudgetExhausted()) {
+	    TopCandidates candidates = expand(beam, workers, tieBreakSeed);
+	    if (candidates.size() == 0) {
+		return levels;
+	    }
+
+	    // create the boards of the next level
+	    List<IFoEGameboard> nextBeam = new ArrayList<>(candidates.size());
+	    for (int idx = 0; idx < candidates.size(); idx++) {
+		long payload = candidates.getPayload(idx);
+		int move = (int) payload;
+		IFoEGameboard child = beam.get((int) (payload >>> 32)).clone();
+		child.placeBuildingWithoutAnyChecks(Tile.unpackX(move), Tile.unpackY(move), Tile.unpackBuilding(move));
+		nextBeam.add(child);
+	    }
+	    levelCreated(nextBeam);
+	    // sorted by rating, so the first one is the best one. It's cloned,
+	    // because the workers change the beam boards on the next level.
+	    addChangingGamefieldToTopList(nextBeam.get(0));
+
+	    beam = nextBeam;
+	    levels++;
+	}
+	return levels;
+    }
+
+    /**
+     * called for every new level, before it's expanded. Does nothing, it's
+     * there for tests.
+     *
+     * @param level
+     *            the game fields of the level, best first. Don't change them.
+     */
+    void levelCreated(List<IFoEGameboard> level) {
+    }
+
+    /**
+     * creates all children of the beam in parallel
+     *
+     * @return the best children (without duplicates) in descending order
+     */
+    private TopCandidates expand(List<IFoEGameboard> beam, Worker[] workers, long tieBreakSeed) {
+	List<Callable<TopCandidates>> tasks = new ArrayList<>(workers.length);
+	for (Worker worker : workers) {
+	    tasks.add(() -> worker.expand(beam, tieBreakSeed));
+	}
+
+	TopCandidates[] parts = new TopCandidates[workers.length];
+	try {
+	    int idx = 0;
+	    for (Future<TopCandidates> future : pool.invokeAll(tasks)) {
+		parts[idx++] = future.get();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IllegalStateException("Beam search was interrupted", e);
+	} catch (ExecutionException e) {
+	    throw new IllegalStateException("Beam search failed", e.getCause());
+	}
+	return TopCandidates.merge(parts, BEAM_WIDTH);
+    }
+
+    /**
+     * @return the sort key of a game field: the rating in the upper half and
+     *         a tie-break in the lower half
+     */
+    private static long key(int rating, long tieBreak) {
+	return ((long) rating << 32) | tieBreak;
+    }
+
+    /**
+     * @return a random tie-break derived from the layout, so the same layout
+     *         gets the same tie-break, no matter which thread creates it
+     */
+    private static long tieBreak(long layoutHash, long tieBreakSeed) {
+	long z = (layoutHash ^ tieBreakSeed) * 0x9E3779B97F4A7C15L;
+	z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+	z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+	return (z ^ (z >>> 31)) & MAX_TIE_BREAK;
+    }
+
+    /**
+     * @return change of the rating, if the building is placed on free tiles
+     */
+    private static int ratingDelta(TileState building) {
+	return building.getWidth() * building.getHeight() * (building.getValue() - TileState.FREE.getValue());
+    }
+
+    /**
+     * Creates the children of every n-th game field of a level. Each worker
+     * is used by a single thread at a time.
+     */
+    private final class Worker {
+	private final int offset;
+	private final int step;
+	private final TopCandidates candidates = new TopCandidates(BEAM_WIDTH);
+	private final int[] options;
+
+	Worker(int offset, int step, IFoEGameboard board) {
+	    this.offset = offset;
+	    this.step = step;
+	    this.options = new int[board.getWidth() * board.getHeight()];
+	}
+
+	/**
+	 * @param beam
+	 *            the current level. The worker changes its game fields while
+	 *            the children are created, but restores them.
+	 * @return the best children of the game fields of this worker
+	 */
+	TopCandidates expand(List<IFoEGameboard> beam, long tieBreakSeed) {
+	    candidates.clear();
+	    long evaluated = 0;
+	    for (int parentIdx = offset; parentIdx < beam.size(); parentIdx += step) {
+		IFoEGameboard parent = beam.get(parentIdx);
+		TileState[] buildings = (parent.getOccupiedTiles() == 0 ? CASTLE_ONLY : NEXT_LEVEL_BUILDINGS);
+		for (TileState building : buildings) {
+		    if (!candidates.accepts(key(parent.getRating() + ratingDelta(building), MAX_TIE_BREAK))) {
+			// even the best child would be dropped
+			continue;
+		    }
+
+		    int optionCnt = parent.getPlacementOptions(building, options);
+		    evaluated += optionCnt;
+		    for (int idx = 0; idx < optionCnt; idx++) {
+			int option = options[idx];
+			parent.placeBuildingUndoable(Tile.unpackX(option), Tile.unpackY(option), building);
+			long hash = parent.getCanonicalHash();
+			long key = key(parent.getRating(), tieBreak(hash, tieBreakSeed));
+			candidates.offer(key, hash, ((long) parentIdx << 32) | (option & 0xFFFFFFFFL));
+			parent.undoLastPlacement();
+		    }
+		}
+	    }
+	    countBoards(evaluated);
+	    return candidates;
+	}
+    }
+}
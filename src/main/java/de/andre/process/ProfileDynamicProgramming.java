@@ -0,0 +1,63 @@
+package de.andre.process;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.TileState;
+import de.andre.process.util.ManuelPlacement;
+import de.andre.process.util.RowProfileSolver;
+
+/**
+ * Exact optimization for small boards: every castle position is solved by
+ * {@link RowProfileSolver}. The rating and the layout are mirror symmetric,
+ * so only the castle positions in the upper left quarter are tried. The best
+ * rating of the positions solved so far is passed on to prune the next ones.
+ * <p>
+ * Unlike the other engines this one terminates, the best game field is the
+ * proven optimum of the board.
+ */
+public class ProfileDynamicProgramming extends AbstractOptimization {
+
+    @Override
+    protected void start() {
+	IFoEGameboard startingBoard = createRandomBoard();
+	if (startingBoard.getWidth() > RowProfileSolver.MAX_WIDTH) {
+	    throw new IllegalArgumentException("GAMEFIELD_WIDTH (" + startingBoard.getWidth() + ") must not exceed "
+		    + RowProfileSolver.MAX_WIDTH + " for exact optimization.");
+	}
+	logParameter("MAX_WIDTH", RowProfileSolver.MAX_WIDTH);
+	if (startingBoard.getWidth() < TileState.CASTLE.getWidth()
+		|| startingBoard.getHeight() < TileState.CASTLE.getHeight()) {
+	    log("the castle doesn't fit on the board, there is no layout.");
+	    return;
+	}
+	ManuelPlacement.createAndPrintReference(startingBoard);
+
+	int lastCastleX = (startingBoard.getWidth() - TileState.CASTLE.getWidth()) / 2;
+	int lastCastleY = (startingBoard.getHeight() - TileState.CASTLE.getHeight()) / 2;
+	int incumbent = Integer.MIN_VALUE;
+	for (int castleY = 0; castleY <= lastCastleY; castleY++) {
+	    for (int castleX = 0; castleX <= lastCastleX; castleX++) {
+		if (isBudgetExhausted()) {
+		    log("budget exhausted, "
+			    + (incumbent == Integer.MIN_VALUE ? "no castle position has been solved."
+				    : "the best rating " + incumbent + " isn't proven to be optimal."));
+		    return;
+		}
+		long startTime = System.nanoTime();
+		RowProfileSolver solver = new RowProfileSolver(startingBoard.getWidth(), startingBoard.getHeight(),
+			castleX, castleY);
+		int rating = solver.solve(incumbent);
+		log("castle at " + castleX + "/" + castleY + ": "
+			+ (rating == Integer.MIN_VALUE ? "no improvement" : String.valueOf(rating)) + " ("
+			+ solver.getProfileCount() + " profiles, "
+			+ (System.nanoTime() - startTime) / 1_000_000L + " ms).");
+		if (rating > incumbent) {
+		    incumbent = rating;
+		    IFoEGameboard board = startingBoard.clone();
+		    solver.writeTo(board);
+		    addGamefieldToTopList(board);
+		}
+	    }
+	}
+	log("optimum of the board: " + incumbent);
+    }
+}
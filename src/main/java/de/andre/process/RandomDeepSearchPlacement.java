@@ -7,7 +7,6 @@ import java.util.List;
 import java.util.Random;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
 
 import de.andre.data.IFoEGameboard;
 import de.andre.data.Tile;
@@ -16,7 +15,6 @@ import de.andre.process.util.ManuelPlacement;
 import de.andre.process.util.ModifieableIterator;
 import de.andre.process.util.PreferNewSortedLimitedList;
 
-@Component
 public class RandomDeepSearchPlacement extends AbstractOptimization {
     private static final GamefieldComparator GAMEFIELD_COMPARATOR = new GamefieldComparator();
 
@@ -30,7 +28,7 @@ public class RandomDeepSearchPlacement extends AbstractOptimization {
     private Random r;
 
     public void start() {
-	long seed = new Random().nextLong();
+	long seed = createSeed();
 	logParameter("MAX_SAVED_GAMEFIELDS_PER_STEP", MAX_SAVED_GAMEFIELDS_PER_STEP);
 	logParameter("MAX_SAVED_GAMEFIELDS_PER_RESET", MAX_SAVED_GAMEFIELDS_PER_RESET);
 	logParameter("MAX_ITERATIONS_BEFORE_RESET", MAX_ITERATIONS_BEFORE_RESET);
@@ -47,7 +45,7 @@ public class RandomDeepSearchPlacement extends AbstractOptimization {
 	int iteration = 0;
 	int step = 0;
 
-	while (true) {
+	while (!isBudgetExhausted()) {
 	    iteration++;
 	    step = 0;
 
@@ -63,6 +61,7 @@ public class RandomDeepSearchPlacement extends AbstractOptimization {
 		    addGamefieldToTopList(newGamefield);
 		}
 	    }
+	    countBoards(step);
 
 	    if (iteration >= MAX_ITERATIONS_BEFORE_RESET) {
 		log("restart after " + iteration + " iterations. Last iteration had " + step + " steps.");
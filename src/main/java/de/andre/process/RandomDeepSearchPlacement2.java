@@ -9,14 +9,13 @@ import java.util.List;
 import java.util.Random;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
 
 import de.andre.data.IFoEGameboard;
 import de.andre.data.Tile;
 import de.andre.data.TileState;
+import de.andre.process.util.Checkpoint;
 import de.andre.process.util.ManuelPlacement;
 
-@Component
 public class RandomDeepSearchPlacement2 extends AbstractOptimization {
     private static final GamefieldComparator GAMEFIELD_COMPARATOR = new GamefieldComparator();
 
@@ -30,7 +29,7 @@ public class RandomDeepSearchPlacement2 extends AbstractOptimization {
     private Random r;
 
     public void start() {
-	long seed = new Random().nextLong();
+	long seed = createSeed();
 	logParameter("MAX_SAVED_GAMEFIELDS_PER_STEP", MAX_SAVED_GAMEFIELDS_PER_STEP);
 	logParameter("MAX_SAVED_GAMEFIELDS_PER_RESET", MAX_SAVED_GAMEFIELDS_PER_RESET);
 	logParameter("MAX_ITERATIONS_BEFORE_RESET", MAX_ITERATIONS_BEFORE_RESET);
@@ -41,13 +40,22 @@ public class RandomDeepSearchPlacement2 extends AbstractOptimization {
 
 	BestGamefields queue = new BestGamefields();
 	IFoEGameboard startingBoard = createRandomBoard();
-	queue.offer(startingBoard);
+	int iteration = 0;
+	Checkpoint checkpoint = loadCheckpoint(startingBoard);
+	if (checkpoint == null) {
+	    queue.offer(startingBoard);
+	} else {
+	    for (IFoEGameboard gamefield : checkpoint.getGamefields()) {
+		queue.offer(gamefield);
+	    }
+	    r = checkpoint.getRandoms().get(0);
+	    iteration = (int) checkpoint.getValue("iteration", 0);
+	}
 	ManuelPlacement.createAndPrintReference(startingBoard);
 
-	int iteration = 0;
 	int step = 0;
 
-	while (true) {
+	while (!isBudgetExhausted()) {
 	    iteration++;
 	    step = 0;
 
@@ -63,13 +71,33 @@ public class RandomDeepSearchPlacement2 extends AbstractOptimization {
 		    addGamefieldToTopList(newGamefield);
 		}
 	    }
+	    countBoards(step);
 
 	    if (iteration >= MAX_ITERATIONS_BEFORE_RESET) {
 		log("restart after " + iteration + " iterations. Last iteration had " + step + " steps.");
 		queue.reset();
 		iteration = 0;
 	    }
+
+	    // game fields are never changed, so the checkpoint takes
+	    // references only
+	    int iterationsDone = iteration;
+	    checkpointIfDue(c -> addState(c, queue, iterationsDone));
+	}
+	int iterationsDone = iteration;
+	checkpointNow(c -> addState(c, queue, iterationsDone));
+    }
+
+    /**
+     * adds the queue, the random generator and the iteration to a checkpoint
+     */
+    private void addState(Checkpoint checkpoint, BestGamefields queue, int iteration) {
+	Iterator<IFoEGameboard> iterator = queue.getIterator();
+	while (iterator.hasNext()) {
+	    checkpoint.getGamefields().add(iterator.next());
 	}
+	checkpoint.addRandom(r);
+	checkpoint.setValue("iteration", iteration);
     }
 
     /**
@@ -92,27 +120,15 @@ public class RandomDeepSearchPlacement2 extends AbstractOptimization {
 
 	// it's 50/50 whether we try an house or an way tile
 	int buildOps = r.nextInt(2);
-	if (buildOps == 0) {
-	    // try to build an house
-	    List<Tile> options = gamefield.getPlacementOptions(TileState.HOUSE);
-	    if (options.isEmpty()) {
-		return null;
-	    }
-	    Tile option = choose(r, options);
-	    IFoEGameboard gfClone = gamefield.clone();
-	    gfClone.placeBuildingWithoutAnyChecks(option.getX(), option.getY(), TileState.HOUSE);
-	    return gfClone;
-	} else {
-	    // try to place an way tile
-	    List<Tile> options = gamefield.getPlacementOptions(TileState.WAY);
-	    if (options.isEmpty()) {
-		return null;
-	    }
-	    Tile option = choose(r, options);
-	    IFoEGameboard gfClone = gamefield.clone();
-	    gfClone.placeBuildingWithoutAnyChecks(option.getX(), option.getY(), TileState.WAY);
-	    return gfClone;
+	TileState building = (buildOps == 0 ? TileState.HOUSE : TileState.WAY);
+	int optionCnt = gamefield.countPlacementOptions(building);
+	if (optionCnt == 0) {
+	    return null;
 	}
+	int option = choose(r, gamefield, building, optionCnt);
+	IFoEGameboard gfClone = gamefield.clone();
+	gfClone.placeBuildingWithoutAnyChecks(Tile.unpackX(option), Tile.unpackY(option), building);
+	return gfClone;
     }
 
     /**
@@ -120,13 +136,17 @@ public class RandomDeepSearchPlacement2 extends AbstractOptimization {
      * 
      * @param r
      *            the random number generator
-     * @param options
-     *            the set of options to choose from (shall never be empty)
-     * @return exactly one option
+     * @param gamefield
+     *            the game field to choose an option from
+     * @param building
+     *            the building to place
+     * @param optionCnt
+     *            number of options to choose from (shall never be zero)
+     * @return exactly one option, packed as {@link Tile#pack(int, int, TileState)}
      */
-    private static Tile choose(Random r, List<Tile> options) {
-	int index = r.nextInt(options.size());
-	return options.get(index);
+    private static int choose(Random r, IFoEGameboard gamefield, TileState building, int optionCnt) {
+	int index = r.nextInt(optionCnt);
+	return gamefield.getPlacementOption(building, index);
     }
 
     private class BestGamefields {
@@ -214,12 +234,17 @@ public class RandomDeepSearchPlacement2 extends AbstractOptimization {
 
 	/**
 	 * Adds an item. When there is no space left, the item with the lowest
-	 * rating will be removed.
+	 * rating will be removed. An item that is equal to an item of the list
+	 * is ignored.
 	 * 
 	 * @param item
 	 *            the item to add
 	 */
 	public void add(T item) {
+	    if (this.data.contains(item)) {
+		// same layout reached by another order of placements
+		return;
+	    }
 	    this.data.add(item);
 
 	    if (this.data.size() > maxSize) {
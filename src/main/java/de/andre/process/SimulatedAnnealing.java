@@ -0,0 +1,210 @@
+package de.andre.process;
+
+import java.util.Random;
+
+import org.springframework.beans.factory.annotation.Value;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.Tile;
+import de.andre.data.TileState;
+import de.andre.process.util.LocalSearchLayout;
+import de.andre.process.util.ManuelPlacement;
+
+/**
+ * Simulated annealing: improves a complete layout by local moves (add or remove
+ * a way, add, remove or move a house, move the castle). A move, that improves
+ * the rating, is always accepted, a worse one with the probability
+ * exp(delta / temperature). The temperature is lowered geometrically during a
+ * round. Every round starts at one of the best game fields found so far and its
+ * result is offered to the top-list, so the rounds explore different layouts.
+ * <p>
+ * Moves are checked and rated by {@link LocalSearchLayout} in O(1) (except
+ * moving the castle), rejected moves don't change anything at all.
+ */
+public class SimulatedAnnealing extends AbstractOptimization {
+    private static final int ADD_WAY = 0;
+    private static final int REMOVE_WAY = 1;
+    private static final int ADD_HOUSE = 2;
+    private static final int REMOVE_HOUSE = 3;
+    private static final int MOVE_HOUSE = 4;
+    private static final int MOVE_CASTLE = 5;
+    private static final int MOVE_TYPES = 6;
+    /** number of moves with the same temperature */
+    private static final int MOVES_PER_TEMPERATURE = 1 << 12;
+
+    @Value("${exp.sa.start.temperature}")
+    private double START_TEMPERATURE = 200.0;
+    @Value("${exp.sa.end.temperature}")
+    private double END_TEMPERATURE = 0.5;
+    @Value("${exp.sa.moves.per.round}")
+    private long MOVES_PER_ROUND = 50_000_000L;
+
+    private Random r;
+
+    @Override
+    protected void start() {
+	long seed = createSeed();
+	logParameter("START_TEMPERATURE", START_TEMPERATURE);
+	logParameter("END_TEMPERATURE", END_TEMPERATURE);
+	logParameter("MOVES_PER_ROUND", MOVES_PER_ROUND);
+	logParameter("random.seed", seed);
+
+	// seed = -6542860481660332438L;
+	r = new Random(seed);
+	IFoEGameboard startingBoard = createRandomBoard();
+	ManuelPlacement.createAndPrintReference(startingBoard);
+	addGamefieldToTopList(construct(startingBoard));
+
+	for (int round = 1; !isBudgetExhausted(); round++) {
+	    long startTime = System.nanoTime();
+	    int rating = anneal(sampleTopGamefield(r));
+	    long movesPerSecond = MOVES_PER_ROUND * 1_000_000_000L / Math.max(1L, System.nanoTime() - startTime);
+	    log("round " + round + " ended with " + rating + " (" + movesPerSecond + " moves/s).");
+	}
+    }
+
+    /**
+     * @param startingBoard
+     *            the empty board, isn't changed
+     * @return a complete layout: the castle somewhere, then houses as long as
+     *         possible, otherwise ways
+     */
+    private IFoEGameboard construct(IFoEGameboard startingBoard) {
+	IFoEGameboard board = startingBoard.clone();
+	placeAtRandom(board, TileState.CASTLE);
+	while (placeAtRandom(board, TileState.HOUSE) || placeAtRandom(board, TileState.WAY)) {
+	    // go on until nothing can be placed anymore
+	}
+	return board;
+    }
+
+    private boolean placeAtRandom(IFoEGameboard board, TileState building) {
+	int optionCnt = board.countPlacementOptions(building);
+	if (optionCnt == 0) {
+	    return false;
+	}
+	int option = board.getPlacementOption(building, r.nextInt(optionCnt));
+	board.placeBuildingWithoutAnyChecks(Tile.unpackX(option), Tile.unpackY(option), building);
+	return true;
+    }
+
+    /**
+     * runs one round of annealing, it ends early, if the budget is exhausted
+     *
+     * @param board
+     *            the game field to start with, isn't changed
+     * @return the rating at the end of the round
+     */
+    private int anneal(IFoEGameboard board) {
+	LocalSearchLayout layout = new LocalSearchLayout(board);
+	int bestRating = getMaxRatingUntilNow();
+	double cooling = Math.log(END_TEMPERATURE / START_TEMPERATURE);
+	double temperature = START_TEMPERATURE;
+	for (long move = 0; move < MOVES_PER_ROUND; move++) {
+	    if (move % MOVES_PER_TEMPERATURE == 0) {
+		if (move > 0) {
+		    // every move rates a neighbouring layout
+		    countBoards(MOVES_PER_TEMPERATURE);
+		}
+		if (isBudgetExhausted()) {
+		    break;
+		}
+		temperature = START_TEMPERATURE * Math.exp(cooling * move / MOVES_PER_ROUND);
+	    }
+
+	    tryMove(layout, temperature);
+	    if (layout.getRating() > bestRating) {
+		bestRating = layout.getRating();
+		IFoEGameboard best = board.clone();
+		layout.writeTo(best);
+		addGamefieldToTopList(best);
+	    }
+	}
+
+	if (isTopListCandidate(layout.getRating())) {
+	    IFoEGameboard result = board.clone();
+	    layout.writeTo(result);
+	    addGamefieldToTopList(result);
+	}
+	return layout.getRating();
+    }
+
+    /**
+     * chooses a move at random and applies it, if it's allowed and accepted
+     */
+    private void tryMove(LocalSearchLayout layout, double temperature) {
+	switch (r.nextInt(MOVE_TYPES)) {
+	case ADD_WAY: {
+	    int x = r.nextInt(layout.getWidth());
+	    int y = r.nextInt(layout.getHeight());
+	    if (layout.canAddWay(x, y) && accept(LocalSearchLayout.WAY_GAIN, temperature)) {
+		layout.addWay(x, y);
+	    }
+	    break;
+	}
+	case REMOVE_WAY: {
+	    int x = r.nextInt(layout.getWidth());
+	    int y = r.nextInt(layout.getHeight());
+	    if (layout.canRemoveWay(x, y) && accept(-LocalSearchLayout.WAY_GAIN, temperature)) {
+		layout.removeWay(x, y);
+	    }
+	    break;
+	}
+	case ADD_HOUSE: {
+	    int x = r.nextInt(layout.getWidth() - TileState.HOUSE.getWidth() + 1);
+	    int y = r.nextInt(layout.getHeight() - TileState.HOUSE.getHeight() + 1);
+	    int ways = layout.countWaysUnderHouse(x, y);
+	    if (ways >= 0 && accept(LocalSearchLayout.HOUSE_GAIN - ways * LocalSearchLayout.WAY_GAIN, temperature)) {
+		layout.addHouse(x, y);
+	    }
+	    break;
+	}
+	case REMOVE_HOUSE:
+	    if (layout.getHouseCount() > 0 && accept(-LocalSearchLayout.HOUSE_GAIN, temperature)) {
+		layout.removeHouse(r.nextInt(layout.getHouseCount()));
+	    }
+	    break;
+	case MOVE_HOUSE:
+	    if (layout.getHouseCount() > 0) {
+		moveHouse(layout);
+	    }
+	    break;
+	case MOVE_CASTLE: {
+	    // the rating doesn't change, so it's always accepted
+	    int direction = r.nextInt(4);
+	    layout.moveCastle(direction == 0 ? -1 : (direction == 1 ? 1 : 0),
+		    direction == 2 ? -1 : (direction == 3 ? 1 : 0));
+	    break;
+	}
+	}
+    }
+
+    /**
+     * shifts a house by one tile or moves it anywhere, the rating doesn't
+     * change, so it's always accepted
+     */
+    private void moveHouse(LocalSearchLayout layout) {
+	int house = r.nextInt(layout.getHouseCount());
+	int x, y;
+	if (r.nextBoolean()) {
+	    int direction = r.nextInt(4);
+	    x = layout.getHouseX(house) + (direction == 0 ? -1 : (direction == 1 ? 1 : 0));
+	    y = layout.getHouseY(house) + (direction == 2 ? -1 : (direction == 3 ? 1 : 0));
+	} else {
+	    x = r.nextInt(layout.getWidth() - TileState.HOUSE.getWidth() + 1);
+	    y = r.nextInt(layout.getHeight() - TileState.HOUSE.getHeight() + 1);
+	}
+	if (layout.canMoveHouse(house, x, y)) {
+	    layout.moveHouse(house, x, y);
+	}
+    }
+
+    /**
+     * @param delta
+     *            change of the rating
+     * @return <code>true</code> if the move should be done
+     */
+    private boolean accept(int delta, double temperature) {
+	return delta >= 0 || r.nextDouble() < Math.exp(delta / temperature);
+    }
+}
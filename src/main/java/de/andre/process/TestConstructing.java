@@ -11,6 +11,8 @@ import de.andre.data.IFoEGameboard;
 import de.andre.data.Tile;
 import de.andre.data.TileState;
 import de.andre.data.impl.AbstractGameBoard;
+import de.andre.data.impl.BitPlaneBoard;
+import de.andre.data.impl.CopyOnWriteBoard;
 import de.andre.data.impl.Integer1DimArrayBoard;
 
 public class TestConstructing {
@@ -29,6 +31,10 @@ public class TestConstructing {
 	switch (choice) {
 	case 3:
 	    return new Integer1DimArrayBoard(gamefieldWidth, gamefieldHeight);
+	case 4:
+	    return new BitPlaneBoard(gamefieldWidth, gamefieldHeight);
+	case 5:
+	    return new CopyOnWriteBoard(gamefieldWidth, gamefieldHeight);
 	default:
 	    return null;
 	}
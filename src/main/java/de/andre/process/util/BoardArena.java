@@ -0,0 +1,144 @@
+package de.andre.process.util;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.andre.data.IFoEGameboard;
+
+/**
+ * Stores packed boards (see {@link IFoEGameboard#exportPacked(long[], int)})
+ * contiguously in direct (off-heap) memory. Every board gets a slot, that is
+ * addressed by an int. So millions of boards cost neither object headers nor
+ * any work for the garbage collector. The memory is allocated in slabs and
+ * released slots are reused.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Andre
+ */
+public class BoardArena {
+    private static final int SLOTS_PER_SLAB = 1 << 14;
+
+    private final int slotSize;
+    private final List<LongBuffer> slabs = new ArrayList<>();
+    private final long[] scratch;
+    private int[] freeSlots = new int[64];
+    private int freeSlotCnt = 0;
+    /** number of slots ever handed out */
+    private int usedSlots = 0;
+
+    /**
+     * @param slotSize
+     *            number of longs per board, see
+     *            {@link IFoEGameboard#getPackedSize()}
+     */
+    public BoardArena(int slotSize) {
+	this.slotSize = slotSize;
+	this.scratch = new long[slotSize];
+    }
+
+    /**
+     * @param board
+     *            the board to store. It can be changed afterwards.
+     * @return the slot of the stored board
+     */
+    public int store(IFoEGameboard board) {
+	board.exportPacked(scratch, 0);
+	return store(scratch, 0);
+    }
+
+    /**
+     * @param source
+     *            a board in its packed format
+     * @param offset
+     *            index of the first long to read
+     * @return the slot of the stored board
+     */
+    public int store(long[] source, int offset) {
+	int slot = allocateSlot();
+	LongBuffer slab = slabs.get(slot / SLOTS_PER_SLAB);
+	int slabOffset = (slot % SLOTS_PER_SLAB) * slotSize;
+	for (int idx = 0; idx < slotSize; idx++) {
+	    slab.put(slabOffset + idx, source[offset + idx]);
+	}
+	return slot;
+    }
+
+    /**
+     * @param slot
+     *            slot of a stored board
+     * @param target
+     *            a board of the same size, all its tiles are replaced by the
+     *            stored ones
+     */
+    public void load(int slot, IFoEGameboard target) {
+	read(slot, scratch, 0);
+	target.importPacked(scratch, 0);
+    }
+
+    /**
+     * copies a stored board in its packed format
+     * 
+     * @param slot
+     *            slot of a stored board
+     * @param target
+     *            the array to write to
+     * @param offset
+     *            index of the first long to write
+     */
+    public void read(int slot, long[] target, int offset) {
+	LongBuffer slab = slabs.get(slot / SLOTS_PER_SLAB);
+	int slabOffset = (slot % SLOTS_PER_SLAB) * slotSize;
+	for (int idx = 0; idx < slotSize; idx++) {
+	    target[offset + idx] = slab.get(slabOffset + idx);
+	}
+    }
+
+    /**
+     * @param slot
+     *            slot of a stored board, that isn't needed anymore
+     */
+    public void release(int slot) {
+	if (freeSlotCnt == freeSlots.length) {
+	    freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+	}
+	freeSlots[freeSlotCnt++] = slot;
+    }
+
+    private int allocateSlot() {
+	if (freeSlotCnt > 0) {
+	    return freeSlots[--freeSlotCnt];
+	}
+
+	if (usedSlots == slabs.size() * SLOTS_PER_SLAB) {
+	    // all slabs are full, so allocate a new one
+	    ByteBuffer slab = ByteBuffer.allocateDirect(SLOTS_PER_SLAB * slotSize * Long.BYTES);
+	    slabs.add(slab.asLongBuffer());
+	}
+	return usedSlots++;
+    }
+
+    /**
+     * @return number of boards currently stored
+     */
+    public int size() {
+	return usedSlots - freeSlotCnt;
+    }
+
+    /**
+     * @return number of longs per board
+     */
+    public int getSlotSize() {
+	return slotSize;
+    }
+
+    /**
+     * @return off-heap memory reserved by this arena
+     */
+    public long getReservedBytes() {
+	return (long) slabs.size() * SLOTS_PER_SLAB * slotSize * Long.BYTES;
+    }
+}
@@ -0,0 +1,256 @@
+package de.andre.process.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import de.andre.data.IFoEGameboard;
+
+/**
+ * The state of a long running optimization, so it can be resumed after a
+ * restart: the best game fields, the game fields of the engine, the states of
+ * its random generators and some numbers.
+ * <p>
+ * The file is binary: a magic number and the version, the engine and the
+ * board size, then every game field in its packed format (see
+ * {@link IFoEGameboard#exportPacked(long[], int)}). A checkpoint is written
+ * to a temporary file, that replaces the old one at the end, so there is
+ * always a complete checkpoint, even if the JVM is killed while writing.
+ * <p>
+ * The game fields are packed while writing, so a checkpoint can be filled
+ * with references by the engine and written by another thread. Don't change
+ * the game fields afterwards.
+ *
+ * @author Andre
+ */
+public class Checkpoint {
+    /** "FoEC" */
+    private static final int MAGIC = 0x466F4543;
+    private static final int VERSION = 1;
+
+    private final String engine;
+    private final List<IFoEGameboard> topGamefields = new ArrayList<>();
+    private final List<IFoEGameboard> gamefields = new ArrayList<>();
+    /** serialized random generators */
+    private final List<byte[]> randomStates = new ArrayList<>();
+    private final Map<String, Long> values = new LinkedHashMap<>();
+
+    /**
+     * @param engine
+     *            name of the engine, a checkpoint can be resumed by the same
+     *            engine only
+     */
+    public Checkpoint(String engine) {
+	this.engine = engine;
+    }
+
+    public String getEngine() {
+	return engine;
+    }
+
+    /**
+     * @return the best game fields found so far, best first
+     */
+    public List<IFoEGameboard> getTopGamefields() {
+	return topGamefields;
+    }
+
+    /**
+     * @return the game fields of the engine, e.g. its repository
+     */
+    public List<IFoEGameboard> getGamefields() {
+	return gamefields;
+    }
+
+    /**
+     * keeps the current state of a random generator, so a resumed run goes on
+     * with the same random numbers. The generator can be used afterwards.
+     *
+     * @param r
+     *            random generator of the engine
+     */
+    public void addRandom(Random r) {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+	    // java.util.Random is thread safe, so its state can be taken while other threads use it
+	    objects.writeObject(r);
+	} catch (IOException e) {
+	    throw new UncheckedIOException("Cannot keep the state of " + r, e);
+	}
+	randomStates.add(bytes.toByteArray());
+    }
+
+    /**
+     * @return new random generators with the kept states in the order they
+     *         were added
+     */
+    public List<Random> getRandoms() {
+	List<Random> randoms = new ArrayList<>(randomStates.size());
+	for (byte[] state : randomStates) {
+	    try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(state))) {
+		randoms.add((Random) objects.readObject());
+	    } catch (IOException | ClassNotFoundException e) {
+		throw new IllegalStateException("Cannot restore a random generator", e);
+	    }
+	}
+	return randoms;
+    }
+
+    /**
+     * @param key
+     *            name of the value
+     * @param value
+     *            any number, the engine needs to resume
+     */
+    public void setValue(String key, long value) {
+	values.put(key, value);
+    }
+
+    /**
+     * @param key
+     *            name of the value
+     * @param defaultValue
+     *            returned if there is no such value
+     * @return the value
+     */
+    public long getValue(String key, long defaultValue) {
+	Long value = values.get(key);
+	return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @return all values, don't change them
+     */
+    public Map<String, Long> getValues() {
+	return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * writes the checkpoint, the file is replaced as a whole
+     *
+     * @param file
+     *            the file to write
+     * @throws IOException
+     *             if the file cannot be written, an existing checkpoint is
+     *             kept then
+     */
+    public void write(Path file) throws IOException {
+	Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+	try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeUTF(engine);
+	    IFoEGameboard size = !topGamefields.isEmpty() ? topGamefields.get(0)
+		    : (!gamefields.isEmpty() ? gamefields.get(0) : null);
+	    out.writeInt(size == null ? 0 : size.getWidth());
+	    out.writeInt(size == null ? 0 : size.getHeight());
+	    out.writeInt(size == null ? 0 : size.getPackedSize());
+
+	    long[] packed = new long[size == null ? 0 : size.getPackedSize()];
+	    writeGamefields(out, topGamefields, packed);
+	    writeGamefields(out, gamefields, packed);
+
+	    out.writeInt(randomStates.size());
+	    for (byte[] state : randomStates) {
+		out.writeInt(state.length);
+		out.write(state);
+	    }
+
+	    out.writeInt(values.size());
+	    for (Map.Entry<String, Long> value : values.entrySet()) {
+		out.writeUTF(value.getKey());
+		out.writeLong(value.getValue());
+	    }
+	}
+	Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeGamefields(DataOutputStream out, List<IFoEGameboard> gamefields, long[] packed)
+	    throws IOException {
+	out.writeInt(gamefields.size());
+	for (IFoEGameboard gamefield : gamefields) {
+	    gamefield.exportPacked(packed, 0);
+	    for (long word : packed) {
+		out.writeLong(word);
+	    }
+	}
+    }
+
+    /**
+     * @param file
+     *            a file written by {@link #write(Path)}
+     * @param emptyBoard
+     *            all game fields are clones of this board, isn't changed
+     * @return the checkpoint
+     * @throws IOException
+     *             if the file cannot be read, isn't a checkpoint or its board
+     *             size differs from the one of the empty board
+     */
+    public static Checkpoint read(Path file, IFoEGameboard emptyBoard) throws IOException {
+	try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+	    if (in.readInt() != MAGIC) {
+		throw new IOException(file + " isn't a checkpoint.");
+	    }
+	    int version = in.readInt();
+	    if (version != VERSION) {
+		throw new IOException(file + " has version " + version + ", but only " + VERSION + " is supported.");
+	    }
+	    Checkpoint checkpoint = new Checkpoint(in.readUTF());
+	    int width = in.readInt();
+	    int height = in.readInt();
+	    int packedSize = in.readInt();
+	    boolean empty = (width == 0 && height == 0 && packedSize == 0);
+	    if (!empty && (width != emptyBoard.getWidth() || height != emptyBoard.getHeight()
+		    || packedSize != emptyBoard.getPackedSize())) {
+		throw new IOException(file + " is a checkpoint of a " + width + " x " + height + " board, not of a "
+			+ emptyBoard.getWidth() + " x " + emptyBoard.getHeight() + " board.");
+	    }
+
+	    long[] packed = new long[packedSize];
+	    readGamefields(in, checkpoint.topGamefields, emptyBoard, packed);
+	    readGamefields(in, checkpoint.gamefields, emptyBoard, packed);
+
+	    int randomCnt = in.readInt();
+	    for (int idx = 0; idx < randomCnt; idx++) {
+		byte[] state = new byte[in.readInt()];
+		in.readFully(state);
+		checkpoint.randomStates.add(state);
+	    }
+
+	    int valueCnt = in.readInt();
+	    for (int idx = 0; idx < valueCnt; idx++) {
+		checkpoint.values.put(in.readUTF(), in.readLong());
+	    }
+	    return checkpoint;
+	}
+    }
+
+    private static void readGamefields(DataInputStream in, List<IFoEGameboard> gamefields, IFoEGameboard emptyBoard,
+	    long[] packed) throws IOException {
+	int cnt = in.readInt();
+	for (int idx = 0; idx < cnt; idx++) {
+	    for (int word = 0; word < packed.length; word++) {
+		packed[word] = in.readLong();
+	    }
+	    IFoEGameboard gamefield = emptyBoard.clone();
+	    gamefield.importPacked(packed, 0);
+	    gamefields.add(gamefield);
+	}
+    }
+}
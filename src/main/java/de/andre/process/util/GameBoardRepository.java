@@ -3,68 +3,80 @@ package de.andre.process.util;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import de.andre.data.IFoEGameboard;
 
+/**
+ * Game boards grouped by their number of occupied tiles. The repository is
+ * thread safe: every group has a lock of its own, so threads that add boards
+ * with different numbers of occupied tiles don't block each other, and a
+ * {@link #shrink(int)} locks one group at a time only.
+ * <p>
+ * The boards are never changed by the repository, so don't change them after
+ * adding them.
+ */
 public class GameBoardRepository {
-    private final HashMap<Integer, List<IFoEGameboard>> groups = new HashMap<>();
-    private int size = 0;
-    private int nextStartingKey = 0;
+    private final ConcurrentHashMap<Integer, List<IFoEGameboard>> groups = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final AtomicInteger nextStartingKey = new AtomicInteger(0);
+    private final AtomicBoolean shrinking = new AtomicBoolean(false);
 
     public void add(IFoEGameboard board) {
 	int key = board.getOccupiedTiles();
-	List<IFoEGameboard> group = groups.get(key);
-	if (group == null) {
-	    group = new ArrayList<>();
-	    groups.put(key, group);
+	List<IFoEGameboard> group = groups.computeIfAbsent(key, k -> new ArrayList<>());
+	synchronized (group) {
+	    group.add(board);
 	}
-
-	group.add(board);
-	size++;
+	size.incrementAndGet();
     }
 
     public int size() {
-	return size;
+	return size.get();
     }
 
-    private void recalcSize() {
-	AtomicInteger cnt = new AtomicInteger(0);
-	groups.values().stream().forEach(e -> {
-	    cnt.getAndAdd(e.size());
-	});
-	this.size = cnt.get();
-    }
+    /**
+     * keeps the best boards of every group only. Nothing is done, if another
+     * thread is shrinking right now.
+     *
+     * @param desiredItems
+     *            maximum number of boards per group
+     * @return <code>false</code> if another thread is shrinking right now
+     */
+    public boolean shrink(int desiredItems) {
+	if (!shrinking.compareAndSet(false, true)) {
+	    return false;
+	}
 
-    public void shrink(int desiredItems) {
-	ArrayList<Integer> allKeys = new ArrayList<>(groups.keySet());
-	for (int key : allKeys) {
-	    List<IFoEGameboard> currentList = groups.get(key);
-	    if (currentList.size() > desiredItems) {
-		// sort descending by rating within
-		currentList.sort((a, b) -> {
-		    return b.getRating() - a.getRating();
-		});
-
-		List<IFoEGameboard> newList = new ArrayList<>(currentList.subList(0, desiredItems));
-		currentList.clear();
-		groups.put(key, newList);
+	try {
+	    for (List<IFoEGameboard> group : groups.values()) {
+		synchronized (group) {
+		    int removed = group.size() - desiredItems;
+		    if (removed > 0) {
+			// sort descending by rating within
+			group.sort((a, b) -> {
+			    return b.getRating() - a.getRating();
+			});
+			group.subList(desiredItems, group.size()).clear();
+			size.addAndGet(-removed);
+		    }
+		}
 	    }
+	} finally {
+	    shrinking.set(false);
 	}
-
-	recalcSize();
+	return true;
     }
 
     public IFoEGameboard nextStartingBoard(Random r) {
-	if (groups.containsKey(nextStartingKey)) {
-	    List<IFoEGameboard> choices = groups.get(nextStartingKey);
-	    if (!choices.isEmpty()) {
-		nextStartingKey++;
-		return chooseAtRandom(choices, r);
-	    }
+	int startingKey = nextStartingKey.get();
+	IFoEGameboard board = chooseAtRandom(startingKey, r);
+	if (board != null) {
+	    return board;
 	}
 
 	ArrayList<Integer> allKeys = new ArrayList<>(groups.keySet());
@@ -72,20 +84,20 @@ public class GameBoardRepository {
 	// search for first Key that is greater or equal to 'nextStartingKey'
 	// and a none empty group
 	for (int key : allKeys) {
-	    if (key >= nextStartingKey && !groups.get(key).isEmpty()) {
-		List<IFoEGameboard> choices = groups.get(key);
-		nextStartingKey = key + 1;
-		return chooseAtRandom(choices, r);
+	    if (key >= startingKey) {
+		board = chooseAtRandom(key, r);
+		if (board != null) {
+		    return board;
+		}
 	    }
 	}
 
 	// we haven't found anything, so may be nextStartingKey is to big. So
 	// choose first key that has a none empty group
 	for (int key : allKeys) {
-	    if (!groups.get(key).isEmpty()) {
-		List<IFoEGameboard> choices = groups.get(key);
-		nextStartingKey = key + 1;
-		return chooseAtRandom(choices, r);
+	    board = chooseAtRandom(key, r);
+	    if (board != null) {
+		return board;
 	    }
 	}
 
@@ -95,19 +107,58 @@ public class GameBoardRepository {
 
     /**
      * For UnitTests only.
-     * 
+     *
      * @return
      */
     Collection<IFoEGameboard> collect() {
-	final ArrayList<IFoEGameboard> result = new ArrayList<>();
-	groups.values().stream().forEach(e -> {
-	    result.addAll(e);
-	});
+	return snapshot();
+    }
+
+    /**
+     * @return all boards of the repository. Every group is locked only while
+     *         it's copied, so other threads can go on adding boards.
+     */
+    public List<IFoEGameboard> snapshot() {
+	final ArrayList<IFoEGameboard> result = new ArrayList<>(size());
+	for (List<IFoEGameboard> group : groups.values()) {
+	    synchronized (group) {
+		result.addAll(group);
+	    }
+	}
 	return result;
     }
 
-    private static IFoEGameboard chooseAtRandom(List<IFoEGameboard> choices, Random r) {
-	return choices.get(r.nextInt(choices.size()));
+    /**
+     * @return number of occupied tiles of the group the next starting board
+     *         is chosen from
+     */
+    public int getNextStartingKey() {
+	return nextStartingKey.get();
     }
 
+    public void setNextStartingKey(int key) {
+	nextStartingKey.set(key);
+    }
+
+    /**
+     * @param key
+     *            number of occupied tiles
+     * @param r
+     * @return a board of that group or <code>null</code> if that group is
+     *         empty. The next starting key is set to the following group.
+     */
+    private IFoEGameboard chooseAtRandom(int key, Random r) {
+	List<IFoEGameboard> choices = groups.get(key);
+	if (choices == null) {
+	    return null;
+	}
+
+	synchronized (choices) {
+	    if (choices.isEmpty()) {
+		return null;
+	    }
+	    nextStartingKey.set(key + 1);
+	    return choices.get(r.nextInt(choices.size()));
+	}
+    }
 }
@@ -0,0 +1,107 @@
+package de.andre.process.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.andre.data.IFoEGameboard;
+
+/**
+ * Holds the best game field found so far without any locks. The rating and
+ * the game field are published together as one immutable {@link Entry} by a
+ * compare-and-set, so readers never see a rating of another game field.
+ * <p>
+ * Most offers are worse than the incumbent, they are rejected by reading a
+ * single volatile int, without touching the shared reference at all.
+ *
+ * @author Andre
+ */
+public class Incumbent {
+    /**
+     * a game field together with its rating
+     */
+    public static final class Entry {
+	private final int rating;
+	private final IFoEGameboard gamefield;
+
+	private Entry(int rating, IFoEGameboard gamefield) {
+	    this.rating = rating;
+	    this.gamefield = gamefield;
+	}
+
+	public int getRating() {
+	    return rating;
+	}
+
+	/**
+	 * @return the game field, don't change it
+	 */
+	public IFoEGameboard getGamefield() {
+	    return gamefield;
+	}
+    }
+
+    private final AtomicReference<Entry> best = new AtomicReference<>();
+    /** rating of {@link #best}, may lag behind for a moment */
+    private volatile int bestRating = Integer.MIN_VALUE;
+
+    /**
+     * @param gamefield
+     *            won't be changed by the caller afterwards
+     * @return <code>true</code> if it is the new incumbent
+     */
+    public boolean offer(IFoEGameboard gamefield) {
+	int rating = gamefield.getRating();
+	if (rating <= bestRating) {
+	    return false;
+	}
+	return publish(new Entry(rating, gamefield));
+    }
+
+    /**
+     * Same as {@link #offer(IFoEGameboard)}, but for game fields that will be
+     * changed by the caller afterwards. The game field is only cloned, when it
+     * is better than the incumbent.
+     *
+     * @param gamefield
+     *            the game field to evaluate
+     * @return <code>true</code> if (a clone of) it is the new incumbent
+     */
+    public boolean offerChanging(IFoEGameboard gamefield) {
+	int rating = gamefield.getRating();
+	if (rating <= bestRating) {
+	    return false;
+	}
+	return publish(new Entry(rating, gamefield.clone()));
+    }
+
+    private boolean publish(Entry candidate) {
+	while (true) {
+	    Entry current = best.get();
+	    if (current != null && current.rating >= candidate.rating) {
+		return false;
+	    }
+	    if (best.compareAndSet(current, candidate)) {
+		// a concurrent winner may have written its rating in between
+		int rating;
+		do {
+		    rating = best.get().rating;
+		    bestRating = rating;
+		} while (best.get().rating != rating);
+		return true;
+	    }
+	}
+    }
+
+    /**
+     * @return rating of the incumbent or {@link Integer#MIN_VALUE}
+     */
+    public int getRating() {
+	return bestRating;
+    }
+
+    /**
+     * @return the incumbent or <code>null</code>, never blocks
+     */
+    public Entry get() {
+	return best.get();
+    }
+}
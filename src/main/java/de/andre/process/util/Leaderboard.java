@@ -0,0 +1,173 @@
+package de.andre.process.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import de.andre.data.IFoEGameboard;
+
+/**
+ * Keeps the best game fields found so far, but never more than a fixed number
+ * of them. Layouts with the same canonical hash (see
+ * {@link IFoEGameboard#getCanonicalHash()}) are kept only once, so mirror
+ * images don't crowd out real alternatives.
+ * <p>
+ * It's thread safe. Game fields, that are not good enough, are rejected by
+ * reading a single volatile int. New entries are added under a lock, but the
+ * entries are published as an immutable array, so reading and sampling never
+ * block.
+ *
+ * @author Andre
+ */
+public class Leaderboard {
+    /**
+     * a game field together with its rating and hash
+     */
+    public static final class Entry {
+	private final int rating;
+	private final long hash;
+	private final IFoEGameboard gamefield;
+
+	private Entry(int rating, long hash, IFoEGameboard gamefield) {
+	    this.rating = rating;
+	    this.hash = hash;
+	    this.gamefield = gamefield;
+	}
+
+	public int getRating() {
+	    return rating;
+	}
+
+	/**
+	 * @return the game field, don't change it
+	 */
+	public IFoEGameboard getGamefield() {
+	    return gamefield;
+	}
+    }
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private final int capacity;
+    /** best first, never changed after publishing */
+    private volatile Entry[] entries = NO_ENTRIES;
+    /** game fields with this rating or less are rejected */
+    private volatile int minRating = Integer.MIN_VALUE;
+
+    /**
+     * @param capacity
+     *            maximum number of game fields to keep
+     */
+    public Leaderboard(int capacity) {
+	if (capacity < 1) {
+	    throw new IllegalArgumentException("capacity (" + capacity + ") must be positive");
+	}
+	this.capacity = capacity;
+    }
+
+    /**
+     * @param rating
+     *            rating of a game field
+     * @return <code>false</code> if a game field with that rating would be
+     *         rejected for sure
+     */
+    public boolean accepts(int rating) {
+	return rating > minRating;
+    }
+
+    /**
+     * @param gamefield
+     *            won't be changed by the caller afterwards
+     * @return <code>true</code> if it was added
+     */
+    public boolean offer(IFoEGameboard gamefield) {
+	int rating = gamefield.getRating();
+	return rating > minRating && add(rating, gamefield, false);
+    }
+
+    /**
+     * Same as {@link #offer(IFoEGameboard)}, but for game fields that will be
+     * changed by the caller afterwards. The game field is only cloned, when it
+     * is added.
+     *
+     * @param gamefield
+     *            the game field to evaluate
+     * @return <code>true</code> if a clone of it was added
+     */
+    public boolean offerChanging(IFoEGameboard gamefield) {
+	int rating = gamefield.getRating();
+	return rating > minRating && add(rating, gamefield, true);
+    }
+
+    private synchronized boolean add(int rating, IFoEGameboard gamefield, boolean clone) {
+	Entry[] current = entries;
+	if (current.length == capacity && rating <= current[current.length - 1].rating) {
+	    return false;
+	}
+
+	// position behind all entries with the same or a better rating
+	int pos = 0;
+	while (pos < current.length && current[pos].rating >= rating) {
+	    pos++;
+	}
+	long hash = gamefield.getCanonicalHash();
+	for (int idx = pos - 1; idx >= 0 && current[idx].rating == rating; idx--) {
+	    if (current[idx].hash == hash) {
+		return false;
+	    }
+	}
+
+	int size = Math.min(current.length + 1, capacity);
+	Entry[] next = new Entry[size];
+	System.arraycopy(current, 0, next, 0, pos);
+	next[pos] = new Entry(rating, hash, clone ? gamefield.clone() : gamefield);
+	System.arraycopy(current, pos, next, pos + 1, size - pos - 1);
+	entries = next;
+	if (size == capacity) {
+	    minRating = next[size - 1].rating;
+	}
+	return true;
+    }
+
+    /**
+     * @return number of game fields kept
+     */
+    public int size() {
+	return entries.length;
+    }
+
+    /**
+     * @return the best entry or <code>null</code>
+     */
+    public Entry getBest() {
+	Entry[] current = entries;
+	return current.length == 0 ? null : current[0];
+    }
+
+    /**
+     * @return all entries, best first. It's a snapshot, that isn't changed by
+     *         later offers.
+     */
+    public List<Entry> getEntries() {
+	return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+
+    /**
+     * chooses an entry to restart a search from. Better entries are chosen
+     * more often: it's the better one of two entries chosen at random.
+     *
+     * @param r
+     *            random generator
+     * @return the game field of the entry, don't change it, or
+     *         <code>null</code> if there is none yet
+     */
+    public IFoEGameboard sample(Random r) {
+	Entry[] current = entries;
+	if (current.length == 0) {
+	    return null;
+	}
+	int idx = Math.min(r.nextInt(current.length), r.nextInt(current.length));
+	return current[idx].gamefield;
+    }
+}
@@ -0,0 +1,538 @@
+package de.andre.process.util;
+
+import java.util.Arrays;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.TileState;
+import de.andre.data.impl.PackedTiles;
+
+/**
+ * A complete layout, that can be changed by local moves: add or remove a way,
+ * add, remove or move a house and move the castle. A new house may replace
+ * ways. Unlike a board it knows where every house is, so a house can be removed
+ * again. Every move is checked and applied by looking at the changed tiles and
+ * their direct neighbours only, so a move costs O(1) no matter how big the
+ * board is.
+ * <p>
+ * The rules of the construction are kept all the time: every way is connected
+ * to the castle and every house touches a way. To keep the ways connected a
+ * way is only removed, if its neighbouring ways are connected by the eight
+ * tiles around it (see {@link #isBypassable(int, int)}). Only moving the
+ * castle needs a check of the whole board.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Andre
+ */
+public class LocalSearchLayout {
+    private static final TileState HOUSE = TileState.HOUSE;
+    private static final int HOUSE_TILES = HOUSE.getWidth() * HOUSE.getHeight();
+    private static final int NO_HOUSE = -1;
+    /** the eight tiles around a tile, clockwise starting at the top */
+    private static final int[] RING_DX = { 0, 1, 1, 1, 0, -1, -1, -1 };
+    private static final int[] RING_DY = { -1, -1, 0, 1, 1, 1, 0, -1 };
+    /** change of the rating, if a free tile becomes a way */
+    public static final int WAY_GAIN = TileState.WAY.getValue() - TileState.FREE.getValue();
+    /** change of the rating, if free tiles become a house */
+    public static final int HOUSE_GAIN = HOUSE_TILES * (HOUSE.getValue() - TileState.FREE.getValue());
+
+    private final int width;
+    private final int height;
+    private final TileState[] tiles;
+    /** index of the house on every tile or {@link #NO_HOUSE} */
+    private final int[] houseOfTile;
+    /** top-left tile of every house */
+    private int[] houseTiles;
+    /** number of way tiles touching every house */
+    private int[] houseContacts;
+    private int houseCount = 0;
+    /** top-left tile of the castle or -1 */
+    private int castleTile = -1;
+    private int wayCount = 0;
+    /** reusable buffers of {@link #areWaysConnected()} */
+    private final int[] visitedAt;
+    private final int[] pending;
+    private int visitCounter = 0;
+    /** ways removed by {@link #removeWaysOfArea(int, int)} */
+    private final int[] removedWays = new int[HOUSE_TILES];
+    private int rating;
+
+    /**
+     * @param board
+     *            a board built by the rules of the construction. It isn't
+     *            changed.
+     */
+    public LocalSearchLayout(IFoEGameboard board) {
+	this.width = board.getWidth();
+	this.height = board.getHeight();
+	this.tiles = new TileState[width * height];
+	this.houseOfTile = new int[width * height];
+	this.houseTiles = new int[16];
+	this.houseContacts = new int[16];
+	this.visitedAt = new int[width * height];
+	this.pending = new int[width * height];
+	this.rating = board.getRating();
+	Arrays.fill(houseOfTile, NO_HOUSE);
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		TileState building = board.getBuilding(x, y);
+		tiles[y * width + x] = building;
+		if (building == TileState.CASTLE && castleTile < 0) {
+		    castleTile = y * width + x;
+		} else if (building == TileState.WAY) {
+		    wayCount++;
+		}
+	    }
+	}
+
+	// houses don't overlap, so the first house tile of a house (row by
+	// row) is always its top-left one
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		if (tiles[y * width + x] == HOUSE && houseOfTile[y * width + x] == NO_HOUSE) {
+		    addHouseInternal(x, y);
+		}
+	    }
+	}
+    }
+
+    public int getWidth() {
+	return width;
+    }
+
+    public int getHeight() {
+	return height;
+    }
+
+    /**
+     * @return the same rating a board with this layout has
+     */
+    public int getRating() {
+	return rating;
+    }
+
+    public int getHouseCount() {
+	return houseCount;
+    }
+
+    /**
+     * @param house
+     *            index of a house, lower than {@link #getHouseCount()}
+     * @return zero based index
+     */
+    public int getHouseX(int house) {
+	return houseTiles[house] % width;
+    }
+
+    /**
+     * @param house
+     *            index of a house, lower than {@link #getHouseCount()}
+     * @return zero based index
+     */
+    public int getHouseY(int house) {
+	return houseTiles[house] / width;
+    }
+
+    /**
+     * @return <code>true</code> if the tile is free and touches a way or the
+     *         castle
+     */
+    public boolean canAddWay(int x, int y) {
+	return tiles[y * width + x] == TileState.FREE && countWayOrCastleNeighbours(x, y) > 0;
+    }
+
+    public void addWay(int x, int y) {
+	tiles[y * width + x] = TileState.WAY;
+	wayCount++;
+	rating += WAY_GAIN;
+	changeContactsOfNeighbours(x, y, 1);
+    }
+
+    /**
+     * @return <code>true</code> if the tile is a way, the other ways stay
+     *         connected without it and no house loses its last way
+     */
+    public boolean canRemoveWay(int x, int y) {
+	if (tiles[y * width + x] != TileState.WAY || !isBypassable(x, y)) {
+	    return false;
+	}
+	return isRemovableContact(x - 1, y) && isRemovableContact(x + 1, y) && isRemovableContact(x, y - 1)
+		&& isRemovableContact(x, y + 1);
+    }
+
+    public void removeWay(int x, int y) {
+	tiles[y * width + x] = TileState.FREE;
+	wayCount--;
+	rating -= WAY_GAIN;
+	changeContactsOfNeighbours(x, y, -1);
+    }
+
+    /**
+     * @param x
+     *            left border of the house
+     * @param y
+     *            top border of the house
+     * @return number of ways, that are replaced by a house at that position,
+     *         or -1 if a house cannot be added there
+     */
+    public int countWaysUnderHouse(int x, int y) {
+	int removed = removeWaysOfArea(x, y);
+	if (removed < 0) {
+	    return -1;
+	}
+	boolean touchesWay = countWaysAround(x, y) > 0;
+	restoreWays(removed);
+	return (touchesWay ? removed : -1);
+    }
+
+    /**
+     * adds a house, all ways in its area are removed (see
+     * {@link #countWaysUnderHouse(int, int)})
+     */
+    public void addHouse(int x, int y) {
+	removeWaysOfArea(x, y);
+	addHouseInternal(x, y);
+	rating += HOUSE_GAIN;
+    }
+
+    /**
+     * removes a house. This is always allowed, nothing depends on a house.
+     * The last house gets the index of the removed one.
+     *
+     * @param house
+     *            index of a house, lower than {@link #getHouseCount()}
+     */
+    public void removeHouse(int house) {
+	setHouseTiles(houseTiles[house], TileState.FREE, NO_HOUSE);
+	houseCount--;
+	if (house != houseCount) {
+	    houseTiles[house] = houseTiles[houseCount];
+	    houseContacts[house] = houseContacts[houseCount];
+	    setHouseTiles(houseTiles[house], HOUSE, house);
+	}
+	rating -= HOUSE_GAIN;
+    }
+
+    /**
+     * @param house
+     *            index of a house, lower than {@link #getHouseCount()}
+     * @param x
+     *            new left border of the house
+     * @param y
+     *            new top border of the house
+     * @return <code>true</code> if the new area is free (or covered by that
+     *         house) and touches a way
+     */
+    public boolean canMoveHouse(int house, int x, int y) {
+	return isAreaFree(x, y, house) && countWaysAround(x, y) > 0;
+    }
+
+    /**
+     * moves a house, the rating doesn't change
+     */
+    public void moveHouse(int house, int x, int y) {
+	setHouseTiles(houseTiles[house], TileState.FREE, NO_HOUSE);
+	houseTiles[house] = y * width + x;
+	houseContacts[house] = countWaysAround(x, y);
+	setHouseTiles(houseTiles[house], HOUSE, house);
+    }
+
+    /**
+     * moves the castle by one tile, if the tiles it moves onto are free and
+     * all ways are still connected afterwards. The rating doesn't change.
+     *
+     * @param dx
+     *            -1, 0 or 1
+     * @param dy
+     *            -1, 0 or 1, if dx is 0
+     * @return <code>true</code> if the castle has been moved
+     */
+    public boolean moveCastle(int dx, int dy) {
+	final TileState castle = TileState.CASTLE;
+	if (castleTile < 0) {
+	    return false;
+	}
+	int x = castleTile % width + dx;
+	int y = castleTile / width + dy;
+	if (x < 0 || y < 0 || x + castle.getWidth() > width || y + castle.getHeight() > height) {
+	    return false;
+	}
+	// only the new row or column has to be free
+	int fromX = (dx > 0 ? x + castle.getWidth() - 1 : x);
+	int toX = (dx < 0 ? x + 1 : x + castle.getWidth());
+	int fromY = (dy > 0 ? y + castle.getHeight() - 1 : y);
+	int toY = (dy < 0 ? y + 1 : y + castle.getHeight());
+	for (int ty = fromY; ty < toY; ty++) {
+	    for (int tx = fromX; tx < toX; tx++) {
+		if (tiles[ty * width + tx] != TileState.FREE) {
+		    return false;
+		}
+	    }
+	}
+
+	setCastleTiles(TileState.FREE);
+	castleTile = y * width + x;
+	setCastleTiles(castle);
+	if (!areWaysConnected()) {
+	    setCastleTiles(TileState.FREE);
+	    castleTile = (y - dy) * width + x - dx;
+	    setCastleTiles(castle);
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+     * replaces all tiles of the given board by this layout
+     *
+     * @param target
+     *            a board of the same size
+     */
+    public void writeTo(IFoEGameboard target) {
+	int wordsPerRow = PackedTiles.wordsPerRow(width);
+	long[] packed = new long[target.getPackedSize()];
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		int wordIndex = y * wordsPerRow + x / PackedTiles.TILES_PER_WORD;
+		int bitPosition = (x % PackedTiles.TILES_PER_WORD) * 2;
+		packed[wordIndex] |= (long) PackedTiles.toCode(tiles[y * width + x]) << bitPosition;
+	    }
+	}
+	target.importPacked(packed, 0);
+    }
+
+    /**
+     * removes all ways of the area of a house. The ways are removed one by
+     * one by {@link #removeWay(int, int)}, so the remaining ways are still
+     * connected.
+     *
+     * @return number of removed ways (see {@link #restoreWays(int)}) or -1,
+     *         if not all of them can be removed or the area contains other
+     *         buildings. Nothing is changed in that case.
+     */
+    private int removeWaysOfArea(int x, int y) {
+	if (x < 0 || y < 0 || x + HOUSE.getWidth() > width || y + HOUSE.getHeight() > height) {
+	    return -1;
+	}
+	int ways = 0;
+	for (int dy = 0; dy < HOUSE.getHeight(); dy++) {
+	    for (int dx = 0; dx < HOUSE.getWidth(); dx++) {
+		TileState building = tiles[(y + dy) * width + x + dx];
+		if (building == TileState.WAY) {
+		    ways++;
+		} else if (building != TileState.FREE) {
+		    return -1;
+		}
+	    }
+	}
+
+	int removed = 0;
+	boolean progress = true;
+	while (removed < ways && progress) {
+	    progress = false;
+	    for (int dy = 0; dy < HOUSE.getHeight(); dy++) {
+		for (int dx = 0; dx < HOUSE.getWidth(); dx++) {
+		    if (canRemoveWay(x + dx, y + dy)) {
+			removeWay(x + dx, y + dy);
+			removedWays[removed++] = (y + dy) * width + x + dx;
+			progress = true;
+		    }
+		}
+	    }
+	}
+	if (removed < ways) {
+	    restoreWays(removed);
+	    return -1;
+	}
+	return removed;
+    }
+
+    /**
+     * adds the last removed ways of {@link #removeWaysOfArea(int, int)} again
+     */
+    private void restoreWays(int removed) {
+	for (int idx = removed - 1; idx >= 0; idx--) {
+	    addWay(removedWays[idx] % width, removedWays[idx] / width);
+	}
+    }
+
+    private void addHouseInternal(int x, int y) {
+	if (houseCount == houseTiles.length) {
+	    houseTiles = Arrays.copyOf(houseTiles, houseCount * 2);
+	    houseContacts = Arrays.copyOf(houseContacts, houseCount * 2);
+	}
+	int house = houseCount++;
+	houseTiles[house] = y * width + x;
+	houseContacts[house] = countWaysAround(x, y);
+	setHouseTiles(houseTiles[house], HOUSE, house);
+    }
+
+    private void setCastleTiles(TileState building) {
+	for (int dy = 0; dy < TileState.CASTLE.getHeight(); dy++) {
+	    for (int dx = 0; dx < TileState.CASTLE.getWidth(); dx++) {
+		tiles[castleTile + dy * width + dx] = building;
+	    }
+	}
+    }
+
+    /**
+     * @return <code>true</code> if every way can be reached from the castle
+     */
+    private boolean areWaysConnected() {
+	visitCounter++;
+	int pendingCnt = 0;
+	int reached = 0;
+	pending[pendingCnt++] = castleTile;
+	visitedAt[castleTile] = visitCounter;
+	while (pendingCnt > 0) {
+	    int tile = pending[--pendingCnt];
+	    int x = tile % width;
+	    int y = tile / width;
+	    for (int idx = 0; idx < RING_DX.length; idx += 2) {
+		int nx = x + RING_DX[idx];
+		int ny = y + RING_DY[idx];
+		if (isWayOrCastle(nx, ny) && visitedAt[ny * width + nx] != visitCounter) {
+		    visitedAt[ny * width + nx] = visitCounter;
+		    pending[pendingCnt++] = ny * width + nx;
+		    reached += (tiles[ny * width + nx] == TileState.WAY ? 1 : 0);
+		}
+	    }
+	}
+	return reached == wayCount;
+    }
+
+    private void setHouseTiles(int topLeft, TileState building, int house) {
+	for (int dy = 0; dy < HOUSE.getHeight(); dy++) {
+	    for (int dx = 0; dx < HOUSE.getWidth(); dx++) {
+		int tile = topLeft + dy * width + dx;
+		tiles[tile] = building;
+		houseOfTile[tile] = house;
+	    }
+	}
+    }
+
+    /**
+     * @param house
+     *            this house may cover the area
+     * @return <code>true</code> if the area lies within the board and is
+     *         free
+     */
+    private boolean isAreaFree(int x, int y, int house) {
+	if (x < 0 || y < 0 || x + HOUSE.getWidth() > width || y + HOUSE.getHeight() > height) {
+	    return false;
+	}
+	for (int dy = 0; dy < HOUSE.getHeight(); dy++) {
+	    for (int dx = 0; dx < HOUSE.getWidth(); dx++) {
+		int tile = (y + dy) * width + x + dx;
+		if (tiles[tile] != TileState.FREE && houseOfTile[tile] != house) {
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * @return number of way tiles touching the border of a house at that
+     *         position
+     */
+    private int countWaysAround(int x, int y) {
+	int cnt = 0;
+	for (int dx = 0; dx < HOUSE.getWidth(); dx++) {
+	    cnt += (isWay(x + dx, y - 1) ? 1 : 0) + (isWay(x + dx, y + HOUSE.getHeight()) ? 1 : 0);
+	}
+	for (int dy = 0; dy < HOUSE.getHeight(); dy++) {
+	    cnt += (isWay(x - 1, y + dy) ? 1 : 0) + (isWay(x + HOUSE.getWidth(), y + dy) ? 1 : 0);
+	}
+	return cnt;
+    }
+
+    /**
+     * Checks whether all ways and castle tiles next to the given tile are
+     * connected by the eight tiles around it, so every path through that tile
+     * can go around it. That's the case, if they all belong to the same run of
+     * ways and castle tiles, when walking around the tile. It's a local check
+     * only, so a way, that closes a longer cycle, is kept.
+     *
+     * @return <code>true</code> if the tile can be removed without
+     *         disconnecting any other way
+     */
+    private boolean isBypassable(int x, int y) {
+	int start = 0;
+	while (start < RING_DX.length && isWayOrCastle(x + RING_DX[start], y + RING_DY[start])) {
+	    start++;
+	}
+	if (start == RING_DX.length) {
+	    // surrounded by ways
+	    return true;
+	}
+
+	int connectedRuns = 0;
+	boolean inRun = false;
+	boolean runIsConnected = false;
+	for (int step = 1; step <= RING_DX.length; step++) {
+	    int idx = (start + step) % RING_DX.length;
+	    if (isWayOrCastle(x + RING_DX[idx], y + RING_DY[idx])) {
+		inRun = true;
+		// even indices are the direct neighbours
+		runIsConnected |= (idx % 2 == 0);
+	    } else if (inRun) {
+		connectedRuns += (runIsConnected ? 1 : 0);
+		inRun = false;
+		runIsConnected = false;
+	    }
+	}
+	return connectedRuns <= 1;
+    }
+
+    private int countWayOrCastleNeighbours(int x, int y) {
+	return (isWayOrCastle(x - 1, y) ? 1 : 0) + (isWayOrCastle(x + 1, y) ? 1 : 0)
+		+ (isWayOrCastle(x, y - 1) ? 1 : 0) + (isWayOrCastle(x, y + 1) ? 1 : 0);
+    }
+
+    /**
+     * a tile outside of a house touches at most one tile of that house, so
+     * every neighbouring house is changed once
+     */
+    private void changeContactsOfNeighbours(int x, int y, int change) {
+	changeContacts(x - 1, y, change);
+	changeContacts(x + 1, y, change);
+	changeContacts(x, y - 1, change);
+	changeContacts(x, y + 1, change);
+    }
+
+    private void changeContacts(int x, int y, int change) {
+	int house = houseAt(x, y);
+	if (house != NO_HOUSE) {
+	    houseContacts[house] += change;
+	}
+    }
+
+    /**
+     * @return <code>false</code> if the tile belongs to a house, that touches
+     *         a single way only
+     */
+    private boolean isRemovableContact(int x, int y) {
+	int house = houseAt(x, y);
+	return house == NO_HOUSE || houseContacts[house] > 1;
+    }
+
+    private int houseAt(int x, int y) {
+	if (x < 0 || y < 0 || x >= width || y >= height) {
+	    return NO_HOUSE;
+	}
+	return houseOfTile[y * width + x];
+    }
+
+    private boolean isWay(int x, int y) {
+	return x >= 0 && y >= 0 && x < width && y < height && tiles[y * width + x] == TileState.WAY;
+    }
+
+    private boolean isWayOrCastle(int x, int y) {
+	if (x < 0 || y < 0 || x >= width || y >= height) {
+	    return false;
+	}
+	TileState building = tiles[y * width + x];
+	return building == TileState.WAY || building == TileState.CASTLE;
+    }
+}
@@ -0,0 +1,172 @@
+package de.andre.process.util;
+
+import de.andre.data.IFoEGameboard;
+
+/**
+ * A deque of boards stored in a {@link BoardArena}. The deque itself is a ring
+ * buffer of slot indices, so there is no object per entry at all. Boards are
+ * copied in on offer and copied out into a reusable board on poll.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Andre
+ */
+public class PackedBoardDeque {
+    private final BoardArena arena;
+    private int[] slots = new int[1024];
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * @param packedSize
+     *            number of longs per board, see
+     *            {@link IFoEGameboard#getPackedSize()}
+     */
+    public PackedBoardDeque(int packedSize) {
+	this.arena = new BoardArena(packedSize);
+    }
+
+    /**
+     * @param board
+     *            the board to add at the beginning. It can be changed
+     *            afterwards.
+     */
+    public void offerFirst(IFoEGameboard board) {
+	ensureCapacity();
+	head = (head - 1 + slots.length) % slots.length;
+	slots[head] = arena.store(board);
+	size++;
+    }
+
+    /**
+     * @param board
+     *            the board to add at the end. It can be changed afterwards.
+     */
+    public void offerLast(IFoEGameboard board) {
+	ensureCapacity();
+	slots[(head + size) % slots.length] = arena.store(board);
+	size++;
+    }
+
+    /**
+     * @param source
+     *            a board in its packed format to add at the beginning
+     * @param offset
+     *            index of the first long to read
+     */
+    public void offerFirst(long[] source, int offset) {
+	ensureCapacity();
+	head = (head - 1 + slots.length) % slots.length;
+	slots[head] = arena.store(source, offset);
+	size++;
+    }
+
+    /**
+     * @param source
+     *            a board in its packed format to add at the end
+     * @param offset
+     *            index of the first long to read
+     */
+    public void offerLast(long[] source, int offset) {
+	ensureCapacity();
+	slots[(head + size) % slots.length] = arena.store(source, offset);
+	size++;
+    }
+
+    /**
+     * removes the first board
+     * 
+     * @param target
+     *            a board of the same size, all its tiles are replaced by the
+     *            removed board
+     * @return <code>false</code> if the deque was empty
+     */
+    public boolean pollFirst(IFoEGameboard target) {
+	if (size == 0) {
+	    return false;
+	}
+
+	int slot = slots[head];
+	head = (head + 1) % slots.length;
+	size--;
+	arena.load(slot, target);
+	arena.release(slot);
+	return true;
+    }
+
+    /**
+     * removes the last board
+     * 
+     * @param target
+     *            a board of the same size, all its tiles are replaced by the
+     *            removed board
+     * @return <code>false</code> if the deque was empty
+     */
+    public boolean pollLast(IFoEGameboard target) {
+	if (size == 0) {
+	    return false;
+	}
+
+	int slot = slots[(head + size - 1) % slots.length];
+	size--;
+	arena.load(slot, target);
+	arena.release(slot);
+	return true;
+    }
+
+    /**
+     * removes the last board
+     * 
+     * @param target
+     *            the array to write the removed board to in its packed format
+     * @param offset
+     *            index of the first long to write
+     * @return <code>false</code> if the deque was empty
+     */
+    public boolean pollLast(long[] target, int offset) {
+	if (size == 0) {
+	    return false;
+	}
+
+	int slot = slots[(head + size - 1) % slots.length];
+	size--;
+	arena.read(slot, target, offset);
+	arena.release(slot);
+	return true;
+    }
+
+    private void ensureCapacity() {
+	if (size < slots.length) {
+	    return;
+	}
+
+	int[] newSlots = new int[slots.length * 2];
+	for (int idx = 0; idx < size; idx++) {
+	    newSlots[idx] = slots[(head + idx) % slots.length];
+	}
+	slots = newSlots;
+	head = 0;
+    }
+
+    public int size() {
+	return size;
+    }
+
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    /**
+     * @return number of longs per board
+     */
+    public int getPackedSize() {
+	return arena.getSlotSize();
+    }
+
+    /**
+     * @return off-heap memory reserved for the boards
+     */
+    public long getReservedBytes() {
+	return arena.getReservedBytes();
+    }
+}
@@ -0,0 +1,456 @@
+package de.andre.process.util;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.TileState;
+
+/**
+ * Exact solver for small boards with a fixed castle position. The board is
+ * swept tile by tile, row by row, and all partial layouts with the same
+ * profile are merged, only the best of them is kept (dynamic programming).
+ * <p>
+ * The profile is the last tile of every column, that has been decided: the
+ * tiles of the current row left of the current tile and the tiles of the row
+ * above for all other columns. Every tile of the profile is stored in 5 bits
+ * of a long:
+ * <ul>
+ * <li>0: free</li>
+ * <li>1 - 7: a way or castle tile, the number labels its connected ways. Two
+ * tiles with the same label are connected by the tiles decided so far.</li>
+ * <li>8 - 25: a house tile: its row and column within the house and whether
+ * the house touches a way already</li>
+ * </ul>
+ * The highest bit marks profiles, whose ways are complete: a group of
+ * connected ways has left the profile without being connected to the others,
+ * so no way must follow anymore.
+ * <p>
+ * All profiles of a tile are kept (see {@link StateTable}) together with the
+ * profile of the tile before, so the best layout can be rebuilt at the end.
+ *
+ * @author Andre
+ */
+public class RowProfileSolver {
+    /** the profile of a row has to fit into a long */
+    public static final int MAX_WIDTH = 12;
+    private static final int BITS_PER_TILE = 5;
+    private static final long TILE_MASK = (1L << BITS_PER_TILE) - 1;
+    private static final long COMPLETE = 1L << 63;
+    private static final int FREE = 0;
+    private static final int MAX_LABEL = 7;
+    private static final int HOUSE = MAX_LABEL + 1;
+    private static final int HOUSE_SIZE = TileState.HOUSE.getWidth();
+    private static final int NOT_SOLVED = -1;
+
+    private final int width;
+    private final int height;
+    private final int castleX;
+    private final int castleY;
+    /** index of the last castle tile */
+    private final int lastCastleTile;
+    /** best possible gain of all tiles from the given index on */
+    private final int[] maxGain;
+    /** the profiles after every tile */
+    private final StateTable[] profiles;
+    /** index of the best final profile */
+    private int best = NOT_SOLVED;
+
+    /**
+     * @param width
+     *            width of the board, at most {@link #MAX_WIDTH}
+     * @param height
+     *            height of the board
+     * @param castleX
+     *            left border of the castle
+     * @param castleY
+     *            top border of the castle
+     */
+    public RowProfileSolver(int width, int height, int castleX, int castleY) {
+	if (width > MAX_WIDTH) {
+	    throw new IllegalArgumentException("width (" + width + ") must not exceed " + MAX_WIDTH);
+	}
+	this.width = width;
+	this.height = height;
+	this.castleX = castleX;
+	this.castleY = castleY;
+	this.lastCastleTile = (castleY + TileState.CASTLE.getHeight() - 1) * width + castleX
+		+ TileState.CASTLE.getWidth() - 1;
+	this.profiles = new StateTable[width * height];
+	this.maxGain = new int[width * height + 1];
+	for (int tile = width * height - 1; tile >= 0; tile--) {
+	    maxGain[tile] = maxGain[tile + 1] + (isCastle(tile % width, tile / width) ? 0 : TileState.HOUSE.getValue());
+	}
+    }
+
+    /**
+     * @param incumbent
+     *            partial layouts, that cannot beat this rating, are dropped
+     * @return the best rating of all layouts with that castle position or
+     *         {@link Integer#MIN_VALUE} if there is none better than the
+     *         incumbent
+     */
+    public int solve(int incumbent) {
+	StateTable previous = new StateTable();
+	previous.offer(0L, 0, NOT_SOLVED);
+	for (int tile = 0; tile < width * height; tile++) {
+	    StateTable next = new StateTable(previous.size());
+	    for (int idx = 0; idx < previous.size(); idx++) {
+		expand(previous.getKey(idx), previous.getValue(idx), idx, tile, incumbent, next);
+	    }
+	    next.freeze();
+	    profiles[tile] = next;
+	    previous = next;
+	}
+
+	int bestRating = Integer.MIN_VALUE;
+	for (int idx = 0; idx < previous.size(); idx++) {
+	    if (isValidEnd(previous.getKey(idx)) && previous.getValue(idx) > bestRating) {
+		bestRating = previous.getValue(idx);
+		best = idx;
+	    }
+	}
+	return bestRating;
+    }
+
+    /**
+     * @return number of profiles of all tiles
+     */
+    public long getProfileCount() {
+	long cnt = 0;
+	for (StateTable table : profiles) {
+	    cnt += (table == null ? 0 : table.size());
+	}
+	return cnt;
+    }
+
+    /**
+     * places the castle and all buildings of the best layout on the given
+     * board
+     *
+     * @param target
+     *            an empty board of the same size
+     */
+    public void writeTo(IFoEGameboard target) {
+	if (best == NOT_SOLVED) {
+	    throw new IllegalStateException("There is no solution.");
+	}
+
+	target.placeBuildingWithoutAnyChecks(castleX, castleY, TileState.CASTLE);
+	int idx = best;
+	for (int tile = width * height - 1; tile >= 0; tile--) {
+	    int x = tile % width;
+	    int y = tile / width;
+	    int code = get(profiles[tile].getKey(idx), x);
+	    if (isWayOrCastle(code) && !isCastle(x, y)) {
+		target.placeBuildingWithoutAnyChecks(x, y, TileState.WAY);
+	    } else if (isHouse(code) && houseRow(code) == 0 && houseColumn(code) == 0) {
+		target.placeBuildingWithoutAnyChecks(x, y, TileState.HOUSE);
+	    }
+	    idx = profiles[tile].getPayload(idx);
+	}
+    }
+
+    /**
+     * offers all profiles, that follow the given one, if the given tile is
+     * decided
+     */
+    private void expand(long profile, int value, int parent, int tile, int incumbent, StateTable next) {
+	int x = tile % width;
+	int y = tile / width;
+	int above = get(profile, x);
+	int left = (x > 0 ? get(profile, x - 1) : FREE);
+
+	if (isCastle(x, y)) {
+	    offerWayOrCastle(profile, value, parent, x, y, above, left, false, incumbent, next);
+	} else if (isHouse(above) && houseRow(above) < HOUSE_SIZE - 1) {
+	    // the house above goes on
+	    offerHouse(profile, value, parent, x, y, houseRow(above) + 1, houseColumn(above), isTouchingWay(above),
+		    incumbent, next);
+	} else if (isHouse(left) && houseColumn(left) < HOUSE_SIZE - 1) {
+	    // the house to the left goes on
+	    offerHouse(profile, value, parent, x, y, houseRow(left), houseColumn(left) + 1, isTouchingWay(left),
+		    incumbent, next);
+	} else {
+	    offerFree(profile, value, parent, x, y, above, incumbent, next);
+	    offerWayOrCastle(profile, value, parent, x, y, above, left, true, incumbent, next);
+	    if (canStartHouse(profile, x, y)) {
+		offerHouse(profile, value, parent, x, y, 0, 0, false, incumbent, next);
+	    }
+	}
+    }
+
+    private void offerFree(long profile, int value, int parent, int x, int y, int above, int incumbent,
+	    StateTable next) {
+	long result = set(profile, x, FREE);
+	if (isHouse(above) && !leaveHouse(above, false)) {
+	    return;
+	}
+	if (isWayOrCastle(above)) {
+	    result = leaveLabel(result, above, y * width + x);
+	    if (result == 0L) {
+		return;
+	    }
+	}
+	offer(result, value + TileState.FREE.getValue(), parent, y * width + x, incumbent, next);
+    }
+
+    private void offerWayOrCastle(long profile, int value, int parent, int x, int y, int above, int left,
+	    boolean way, int incumbent, StateTable next) {
+	if ((profile & COMPLETE) != 0L) {
+	    // no other group of ways may follow
+	    return;
+	}
+	if (isHouse(above) && !leaveHouse(above, way)) {
+	    return;
+	}
+
+	long result = profile;
+	int label;
+	if (isWayOrCastle(above)) {
+	    label = above;
+	    if (isWayOrCastle(left) && left != above) {
+		result = relabel(result, left, above);
+	    }
+	} else if (isWayOrCastle(left)) {
+	    label = left;
+	} else {
+	    label = unusedLabel(result);
+	}
+	result = set(result, x, label);
+
+	if (way) {
+	    // the way touches the bottom border of the house above and the
+	    // right border of the house to the left
+	    if (isHouse(above)) {
+		result = markTouchingWay(result, x - houseColumn(above), y - HOUSE_SIZE, x, y);
+	    }
+	    if (isHouse(left) && houseColumn(left) == HOUSE_SIZE - 1) {
+		result = markTouchingWay(result, x - HOUSE_SIZE, y - houseRow(left), x, y);
+	    }
+	}
+	int tileValue = (way ? TileState.WAY.getValue() : TileState.CASTLE.getValue());
+	offer(normalize(result), value + tileValue, parent, y * width + x, incumbent, next);
+    }
+
+    private void offerHouse(long profile, int value, int parent, int x, int y, int row, int column,
+	    boolean touchingWay, int incumbent, StateTable next) {
+	int above = get(profile, x);
+	int left = (x > 0 ? get(profile, x - 1) : FREE);
+	if (isHouse(above) && !leaveHouse(above, false)) {
+	    return;
+	}
+	boolean touching = touchingWay //
+		|| (column == 0 && isWay(left, x - 1, y)) // left border
+		|| (row == 0 && isWay(above, x, y - 1)); // top border
+	long result = set(profile, x, house(row, column, touching));
+	if (row == 0 && isWayOrCastle(above)) {
+	    result = leaveLabel(result, above, y * width + x);
+	    if (result == 0L) {
+		return;
+	    }
+	}
+	if (touching) {
+	    result = markTouchingWay(result, x - column, y - row, x, y);
+	}
+	offer(normalize(result), value + TileState.HOUSE.getValue(), parent, y * width + x, incumbent, next);
+    }
+
+    private void offer(long profile, int value, int parent, int tile, int incumbent, StateTable next) {
+	if (value + maxGain[tile + 1] > incumbent) {
+	    next.offer(profile, value, parent);
+	}
+    }
+
+    /**
+     * @param above
+     *            a house tile, that leaves the profile
+     * @param way
+     *            <code>true</code> if a way is placed below it
+     * @return <code>false</code> if that was the last chance of its house to
+     *         touch a way, but it doesn't
+     */
+    private boolean leaveHouse(int above, boolean way) {
+	boolean lastChance = houseRow(above) == HOUSE_SIZE - 1 && houseColumn(above) == HOUSE_SIZE - 1;
+	return !lastChance || way || isTouchingWay(above);
+    }
+
+    /**
+     * handles a way or castle tile, that leaves the profile
+     *
+     * @return the new profile or 0, if the ways can't be connected anymore
+     */
+    private long leaveLabel(long profile, int label, int tile) {
+	boolean otherLabels = false;
+	for (int column = 0; column < width; column++) {
+	    int code = get(profile, column);
+	    if (code == label) {
+		// still connected to the profile
+		return profile;
+	    }
+	    otherLabels |= isWayOrCastle(code);
+	}
+
+	// the group is complete, so it has to be the only one
+	if (otherLabels || tile <= lastCastleTile) {
+	    return 0L;
+	}
+	return profile | COMPLETE;
+    }
+
+    /**
+     * @return <code>true</code> if a house can have its top-left tile there
+     */
+    private boolean canStartHouse(long profile, int x, int y) {
+	if (x + HOUSE_SIZE > width || y + HOUSE_SIZE > height) {
+	    return false;
+	}
+	// the castle must not overlap
+	if (x < castleX + TileState.CASTLE.getWidth() && castleX < x + HOUSE_SIZE
+		&& y < castleY + TileState.CASTLE.getHeight() && castleY < y + HOUSE_SIZE) {
+	    return false;
+	}
+	// no house above must go on in this row
+	for (int column = x + 1; column < x + HOUSE_SIZE; column++) {
+	    int code = get(profile, column);
+	    if (isHouse(code) && houseRow(code) < HOUSE_SIZE - 1) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * marks all tiles of the house within the profile as touching a way
+     *
+     * @param houseX
+     *            left border of the house
+     * @param houseY
+     *            top border of the house
+     * @param x
+     *            the current tile, the profile contains the current row up to
+     *            this tile
+     * @param y
+     *            the current row
+     */
+    private long markTouchingWay(long profile, int houseX, int houseY, int x, int y) {
+	long result = profile;
+	for (int column = Math.max(0, houseX); column < Math.min(width, houseX + HOUSE_SIZE); column++) {
+	    int code = get(result, column);
+	    int row = (column <= x ? y : y - 1);
+	    if (isHouse(code) && houseColumn(code) == column - houseX && row - houseRow(code) == houseY) {
+		result = set(result, column, house(houseRow(code), houseColumn(code), true));
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * @return <code>true</code> if the final profile is a valid end: all
+     *         ways are connected and all houses touch a way
+     */
+    private boolean isValidEnd(long profile) {
+	int label = FREE;
+	for (int column = 0; column < width; column++) {
+	    int code = get(profile, column);
+	    if (isWayOrCastle(code)) {
+		if (label != FREE && label != code) {
+		    return false;
+		}
+		label = code;
+	    } else if (isHouse(code) && !isTouchingWay(code)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * @return the profile with the labels numbered in the order of their
+     *         first appearance, so equal profiles have equal labels
+     */
+    private long normalize(long profile) {
+	int[] mapping = new int[MAX_LABEL + 1];
+	int nextLabel = 1;
+	long result = profile;
+	for (int column = 0; column < width; column++) {
+	    int code = get(profile, column);
+	    if (isWayOrCastle(code)) {
+		if (mapping[code] == 0) {
+		    mapping[code] = nextLabel++;
+		}
+		result = set(result, column, mapping[code]);
+	    }
+	}
+	return result;
+    }
+
+    private long relabel(long profile, int from, int to) {
+	long result = profile;
+	for (int column = 0; column < width; column++) {
+	    if (get(result, column) == from) {
+		result = set(result, column, to);
+	    }
+	}
+	return result;
+    }
+
+    private int unusedLabel(long profile) {
+	boolean[] used = new boolean[MAX_LABEL + 1];
+	for (int column = 0; column < width; column++) {
+	    int code = get(profile, column);
+	    if (isWayOrCastle(code)) {
+		used[code] = true;
+	    }
+	}
+	for (int label = 1; label <= MAX_LABEL; label++) {
+	    if (!used[label]) {
+		return label;
+	    }
+	}
+	throw new IllegalStateException("Too many groups of ways");
+    }
+
+    private boolean isCastle(int x, int y) {
+	return castleX <= x && x < castleX + TileState.CASTLE.getWidth() && castleY <= y
+		&& y < castleY + TileState.CASTLE.getHeight();
+    }
+
+    /**
+     * @return <code>true</code> if the code at that tile is a way (and not
+     *         the castle)
+     */
+    private boolean isWay(int code, int x, int y) {
+	return isWayOrCastle(code) && y >= 0 && !isCastle(x, y);
+    }
+
+    private static int get(long profile, int column) {
+	return (int) (profile >>> (column * BITS_PER_TILE) & TILE_MASK);
+    }
+
+    private static long set(long profile, int column, int code) {
+	int shift = column * BITS_PER_TILE;
+	return (profile & ~(TILE_MASK << shift)) | ((long) code << shift);
+    }
+
+    private static boolean isWayOrCastle(int code) {
+	return code != FREE && code <= MAX_LABEL;
+    }
+
+    private static boolean isHouse(int code) {
+	return code >= HOUSE;
+    }
+
+    private static int house(int row, int column, boolean touchingWay) {
+	return HOUSE + (row * HOUSE_SIZE + column) * 2 + (touchingWay ? 1 : 0);
+    }
+
+    private static int houseRow(int code) {
+	return (code - HOUSE) / 2 / HOUSE_SIZE;
+    }
+
+    private static int houseColumn(int code) {
+	return (code - HOUSE) / 2 % HOUSE_SIZE;
+    }
+
+    private static boolean isTouchingWay(int code) {
+	return ((code - HOUSE) & 1) != 0;
+    }
+}
@@ -0,0 +1,143 @@
+package de.andre.process.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits a run of an optimization by wall-clock time, number of evaluated
+ * game fields, number of rollouts and time without improvement. A limit of 0
+ * means unlimited.
+ * <p>
+ * The engines check {@link #isExhausted()} in their hot loops, that's a
+ * single volatile read. The limits themselves are checked by
+ * {@link #check(int)}, that is called every now and then by a watcher
+ * thread, so a run may overshoot a limit by the time between two checks.
+ * Counting is done by {@link LongAdder}s, so the threads of an engine don't
+ * contend for it.
+ *
+ * @author Andre
+ */
+public class RunBudget {
+    private final long timeLimitNanos;
+    private final long maxBoards;
+    private final long maxRollouts;
+    private final long stagnationNanos;
+
+    /** nano time, see {@link System#nanoTime()} */
+    private final LongSupplier clock;
+    private final long startTime;
+    private final LongAdder boards = new LongAdder();
+    private final LongAdder rollouts = new LongAdder();
+    /** used by the watcher thread only */
+    private int lastRating = Integer.MIN_VALUE;
+    private long lastImprovement;
+    /** why the budget is exhausted or <code>null</code> */
+    private volatile String exhaustedReason = null;
+
+    /**
+     * @param timeLimitSeconds
+     *            wall-clock time of the run
+     * @param maxBoards
+     *            number of game fields to evaluate
+     * @param maxRollouts
+     *            number of rollouts (random playdowns) to do
+     * @param stagnationSeconds
+     *            time without improvement of the best rating
+     */
+    public RunBudget(long timeLimitSeconds, long maxBoards, long maxRollouts, long stagnationSeconds) {
+	this(timeLimitSeconds, maxBoards, maxRollouts, stagnationSeconds, System::nanoTime);
+    }
+
+    /**
+     * same as {@link #RunBudget(long, long, long, long)}, but with another
+     * clock (for tests)
+     *
+     * @param clock
+     *            nano time, see {@link System#nanoTime()}
+     */
+    RunBudget(long timeLimitSeconds, long maxBoards, long maxRollouts, long stagnationSeconds, LongSupplier clock) {
+	this.clock = clock;
+	this.startTime = clock.getAsLong();
+	this.lastImprovement = startTime;
+	this.timeLimitNanos = TimeUnit.SECONDS.toNanos(timeLimitSeconds);
+	this.maxBoards = maxBoards;
+	this.maxRollouts = maxRollouts;
+	this.stagnationNanos = TimeUnit.SECONDS.toNanos(stagnationSeconds);
+    }
+
+    /**
+     * @return <code>true</code> if the run should end as soon as possible
+     */
+    public boolean isExhausted() {
+	return exhaustedReason != null;
+    }
+
+    /**
+     * @return why the budget is exhausted or <code>null</code>
+     */
+    public String getExhaustedReason() {
+	return exhaustedReason;
+    }
+
+    public void countBoards(long cnt) {
+	boards.add(cnt);
+    }
+
+    public void countRollouts(long cnt) {
+	rollouts.add(cnt);
+    }
+
+    public long getBoards() {
+	return boards.sum();
+    }
+
+    public long getRollouts() {
+	return rollouts.sum();
+    }
+
+    /**
+     * @return wall-clock time since the start of the run
+     */
+    public long getElapsedMillis() {
+	return TimeUnit.NANOSECONDS.toMillis(clock.getAsLong() - startTime);
+    }
+
+    /**
+     * ends the run, no matter how much of the budget is left
+     */
+    public void cancel() {
+	exhausted("cancelled");
+    }
+
+    /**
+     * checks all limits. Must be called by a single thread only.
+     *
+     * @param bestRating
+     *            rating of the best game field found so far
+     */
+    public void check(int bestRating) {
+	long now = clock.getAsLong();
+	if (bestRating > lastRating) {
+	    lastRating = bestRating;
+	    lastImprovement = now;
+	}
+
+	if (timeLimitNanos > 0 && now - startTime >= timeLimitNanos) {
+	    exhausted("time limit reached");
+	} else if (maxBoards > 0 && boards.sum() >= maxBoards) {
+	    exhausted("max boards reached");
+	} else if (maxRollouts > 0 && rollouts.sum() >= maxRollouts) {
+	    exhausted("max rollouts reached");
+	} else if (stagnationNanos > 0 && now - lastImprovement >= stagnationNanos) {
+	    exhausted("no improvement for " + TimeUnit.NANOSECONDS.toSeconds(stagnationNanos) + " s");
+	}
+    }
+
+    private synchronized void exhausted(String reason) {
+	// the first reason wins
+	if (exhaustedReason == null) {
+	    exhaustedReason = reason;
+	}
+    }
+}
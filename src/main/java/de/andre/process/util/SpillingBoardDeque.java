@@ -0,0 +1,305 @@
+package de.andre.process.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+import de.andre.data.IFoEGameboard;
+
+/**
+ * A deque of boards, that keeps its first boards in a {@link PackedBoardDeque}
+ * and spills all other boards to files. When the boards in memory exceed a
+ * limit, the last of them are written as a segment file and when the boards
+ * in memory run out, the next segment is read back. So no board is ever
+ * dropped and the memory usage stays bounded.
+ * <p>
+ * A segment is just the packed boards one after another. Boards added at the
+ * end while there are spilled boards are appended to a segment of their own.
+ * All segments of a deque are kept in a temporary directory of its own, that
+ * is created with the first segment and deleted by {@link #close()}.
+ * The segments are read through a buffer instead of being memory mapped,
+ * because a mapped file cannot be deleted on Windows, until the mapping is
+ * garbage collected.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Andre
+ */
+public class SpillingBoardDeque implements AutoCloseable {
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    private final PackedBoardDeque memory;
+    private final int packedSize;
+    private final int maxBoardsInMemory;
+    private final int boardsPerSegment;
+    private final Path directory;
+    /** the directory of the segments of this deque or <code>null</code> */
+    private Path segmentDirectory;
+    /** the spilled boards, they follow the boards in memory */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long spilledBoards = 0;
+    private final long[] scratch;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    /** holds at least one board, allocated not until a segment is read */
+    private ByteBuffer readBuffer;
+    /** the segment, that is open for writing (it owns the write buffer) */
+    private Segment writing;
+
+    /**
+     * @param packedSize
+     *            number of longs per board, see
+     *            {@link IFoEGameboard#getPackedSize()}
+     * @param maxBoardsInMemory
+     *            the boards in memory never exceed this limit
+     * @param boardsPerSegment
+     *            number of boards to spill at once
+     * @param directory
+     *            the segment files are kept in a temporary directory within it
+     */
+    public SpillingBoardDeque(int packedSize, int maxBoardsInMemory, int boardsPerSegment, Path directory) {
+	this.memory = new PackedBoardDeque(packedSize);
+	this.packedSize = packedSize;
+	this.maxBoardsInMemory = maxBoardsInMemory;
+	this.boardsPerSegment = Math.max(1, Math.min(boardsPerSegment, maxBoardsInMemory));
+	this.directory = directory;
+	this.scratch = new long[packedSize];
+    }
+
+    /**
+     * @param board
+     *            the board to add at the beginning. It can be changed
+     *            afterwards.
+     */
+    public void offerFirst(IFoEGameboard board) {
+	if (memory.size() >= maxBoardsInMemory) {
+	    spillLastBoards();
+	}
+	memory.offerFirst(board);
+    }
+
+    /**
+     * @param board
+     *            the board to add at the end. It can be changed afterwards.
+     */
+    public void offerLast(IFoEGameboard board) {
+	if (segments.isEmpty() && memory.size() < maxBoardsInMemory) {
+	    memory.offerLast(board);
+	    return;
+	}
+
+	// all spilled boards are in front of this one
+	Segment last = segments.peekLast();
+	if (last == null || !last.isAppendable()) {
+	    last = new Segment(createFile(), false);
+	    segments.addLast(last);
+	}
+	board.exportPacked(scratch, 0);
+	last.append(scratch);
+	spilledBoards++;
+    }
+
+    /**
+     * removes the first board
+     *
+     * @param target
+     *            a board of the same size, all its tiles are replaced by the
+     *            removed board
+     * @return <code>false</code> if the deque was empty
+     */
+    public boolean pollFirst(IFoEGameboard target) {
+	if (memory.isEmpty() && !segments.isEmpty()) {
+	    readSegment(segments.pollFirst());
+	}
+	return memory.pollFirst(target);
+    }
+
+    public long size() {
+	return memory.size() + spilledBoards;
+    }
+
+    public boolean isEmpty() {
+	return size() == 0;
+    }
+
+    /**
+     * @return number of boards in files
+     */
+    public long getSpilledBoards() {
+	return spilledBoards;
+    }
+
+    /**
+     * @return off-heap memory reserved for the boards in memory
+     */
+    public long getReservedBytes() {
+	return memory.getReservedBytes();
+    }
+
+    /**
+     * deletes all segment files and their directory
+     */
+    @Override
+    public void close() {
+	while (!segments.isEmpty()) {
+	    segments.pollFirst().delete();
+	}
+	spilledBoards = 0;
+	if (segmentDirectory != null) {
+	    try {
+		Files.deleteIfExists(segmentDirectory);
+	    } catch (IOException e) {
+		throw new UncheckedIOException("Cannot delete " + segmentDirectory, e);
+	    }
+	    segmentDirectory = null;
+	}
+    }
+
+    /**
+     * moves the last boards in memory into a new segment, that is placed in
+     * front of all other segments
+     */
+    private void spillLastBoards() {
+	Segment segment = new Segment(createFile(), true);
+	int cnt = Math.min(boardsPerSegment, memory.size());
+	for (int idx = 0; idx < cnt; idx++) {
+	    // the last board comes first, so the segment is reversed
+	    memory.pollLast(scratch, 0);
+	    segment.append(scratch);
+	}
+	segment.finish();
+	segments.addFirst(segment);
+	spilledBoards += cnt;
+    }
+
+    /**
+     * moves all boards of the segment into memory, that must be empty
+     */
+    private void readSegment(Segment segment) {
+	segment.finish();
+	int boardBytes = packedSize * Long.BYTES;
+	if (readBuffer == null) {
+	    readBuffer = ByteBuffer.allocateDirect(Math.max(boardBytes, READ_BUFFER_BYTES / boardBytes * boardBytes));
+	}
+	try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+	    readBuffer.clear();
+	    int boardsRead = 0;
+	    while (boardsRead < segment.boards) {
+		if (channel.read(readBuffer) < 0) {
+		    throw new IOException("Only " + boardsRead + " of " + segment.boards + " boards found");
+		}
+		readBuffer.flip();
+		while (readBuffer.remaining() >= boardBytes) {
+		    for (int idx = 0; idx < packedSize; idx++) {
+			scratch[idx] = readBuffer.getLong();
+		    }
+		    // a reversed segment starts with the last board
+		    if (segment.reversed) {
+			memory.offerFirst(scratch, 0);
+		    } else {
+			memory.offerLast(scratch, 0);
+		    }
+		    boardsRead++;
+		}
+		readBuffer.compact();
+	    }
+	} catch (IOException e) {
+	    throw new UncheckedIOException("Cannot read " + segment.file, e);
+	}
+	spilledBoards -= segment.boards;
+	segment.delete();
+    }
+
+    private Path createFile() {
+	try {
+	    if (segmentDirectory == null) {
+		segmentDirectory = Files.createTempDirectory(directory, "frontier-");
+	    }
+	    return Files.createTempFile(segmentDirectory, "segment-", ".bin");
+	} catch (IOException e) {
+	    throw new UncheckedIOException("Cannot create a segment file in " + directory, e);
+	}
+    }
+
+    /**
+     * A file of packed boards. It's written sequentially through the write
+     * buffer, so only one segment may be open for writing at a time.
+     */
+    private final class Segment {
+	private final Path file;
+	/** <code>true</code> if the boards are stored from last to first */
+	private final boolean reversed;
+	/** open while this segment is written */
+	private FileChannel channel;
+	private int boards = 0;
+
+	Segment(Path file, boolean reversed) {
+	    this.file = file;
+	    this.reversed = reversed;
+	}
+
+	boolean isAppendable() {
+	    return !reversed && writing == this && boards < boardsPerSegment;
+	}
+
+	void append(long[] board) {
+	    try {
+		if (writing != this) {
+		    if (writing != null) {
+			writing.finish();
+		    }
+		    channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		    writing = this;
+		}
+		if (writeBuffer.remaining() < packedSize * Long.BYTES) {
+		    flush();
+		}
+		for (int idx = 0; idx < packedSize; idx++) {
+		    writeBuffer.putLong(board[idx]);
+		}
+		boards++;
+	    } catch (IOException e) {
+		throw new UncheckedIOException("Cannot write " + file, e);
+	    }
+	}
+
+	/**
+	 * writes all buffered boards and closes the file
+	 */
+	void finish() {
+	    if (writing != this) {
+		return;
+	    }
+	    try {
+		flush();
+		channel.close();
+		channel = null;
+		writing = null;
+	    } catch (IOException e) {
+		throw new UncheckedIOException("Cannot write " + file, e);
+	    }
+	}
+
+	void delete() {
+	    finish();
+	    try {
+		Files.deleteIfExists(file);
+	    } catch (IOException e) {
+		throw new UncheckedIOException("Cannot delete " + file, e);
+	    }
+	}
+
+	private void flush() throws IOException {
+	    writeBuffer.flip();
+	    while (writeBuffer.hasRemaining()) {
+		channel.write(writeBuffer);
+	    }
+	    writeBuffer.clear();
+	}
+    }
+}
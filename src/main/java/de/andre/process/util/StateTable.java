@@ -0,0 +1,125 @@
+package de.andre.process.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from long states to the best int value offered for them, with an int
+ * payload of the best offer. It's an open addressing hash table over
+ * primitive arrays, the entries are kept in the order of their first offer
+ * and can be read by index.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Andre
+ */
+public class StateTable {
+    private static final int EMPTY = 0;
+
+    private long[] keys;
+    private int[] values;
+    private int[] payloads;
+    private int size = 0;
+    /** index + 1 of the entry of every slot or {@link #EMPTY} */
+    private int[] slots;
+    private int mask;
+
+    public StateTable() {
+	this(1 << 4);
+    }
+
+    /**
+     * @param expectedSize
+     *            number of entries, that fit without growing
+     */
+    public StateTable(int expectedSize) {
+	int capacity = Integer.highestOneBit(Math.max(8, expectedSize) - 1) << 1;
+	this.keys = new long[capacity];
+	this.values = new int[capacity];
+	this.payloads = new int[capacity];
+	this.slots = new int[capacity * 2];
+	this.mask = slots.length - 1;
+    }
+
+    /**
+     * adds a state or improves its value
+     *
+     * @param key
+     *            the state
+     * @param value
+     *            the higher the better
+     * @param payload
+     *            kept together with the best value
+     */
+    public void offer(long key, int value, int payload) {
+	int slot = slot(key);
+	while (slots[slot] != EMPTY) {
+	    int idx = slots[slot] - 1;
+	    if (keys[idx] == key) {
+		if (value > values[idx]) {
+		    values[idx] = value;
+		    payloads[idx] = payload;
+		}
+		return;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+
+	if (size == keys.length) {
+	    grow();
+	    offer(key, value, payload);
+	    return;
+	}
+	keys[size] = key;
+	values[size] = value;
+	payloads[size] = payload;
+	slots[slot] = ++size;
+    }
+
+    public int size() {
+	return size;
+    }
+
+    public long getKey(int idx) {
+	return keys[idx];
+    }
+
+    public int getValue(int idx) {
+	return values[idx];
+    }
+
+    public int getPayload(int idx) {
+	return payloads[idx];
+    }
+
+    /**
+     * releases the hash slots, afterwards the entries can be read, but no
+     * states can be offered anymore
+     */
+    public void freeze() {
+	keys = Arrays.copyOf(keys, size);
+	values = Arrays.copyOf(values, size);
+	payloads = Arrays.copyOf(payloads, size);
+	slots = null;
+    }
+
+    private int slot(long key) {
+	long hash = key * 0x9E3779B97F4A7C15L;
+	return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void grow() {
+	int capacity = keys.length * 2;
+	keys = Arrays.copyOf(keys, capacity);
+	values = Arrays.copyOf(values, capacity);
+	payloads = Arrays.copyOf(payloads, capacity);
+	slots = new int[capacity * 2];
+	mask = slots.length - 1;
+	for (int idx = 0; idx < size; idx++) {
+	    int slot = slot(keys[idx]);
+	    while (slots[slot] != EMPTY) {
+		slot = (slot + 1) & mask;
+	    }
+	    slots[slot] = idx + 1;
+	}
+    }
+}
@@ -0,0 +1,242 @@
+package de.andre.process.util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the candidates with the highest keys seen so far, but never more than
+ * a fixed number of them. A candidate is just a key, a hash and a payload, so
+ * there is no object per candidate at all. Internally it's a min heap, the
+ * worst candidate kept is always at the top. Candidates with the same hash
+ * are kept only once.
+ * <p>
+ * This class is not thread safe. Let every thread fill a set of candidates on
+ * its own and {@link #merge(TopCandidates[], int)} them afterwards.
+ *
+ * @author Andre
+ */
+public class TopCandidates {
+    private final int capacity;
+    private final long[] keys;
+    private final long[] hashes;
+    private final long[] payloads;
+    private int size = 0;
+    /** hashes of the kept candidates, open addressing with linear probing */
+    private final long[] hashSet;
+    private final boolean[] hashSetUsed;
+    private final int hashSetMask;
+
+    /**
+     * @param capacity
+     *            maximum number of candidates to keep
+     */
+    public TopCandidates(int capacity) {
+	this.capacity = capacity;
+	this.keys = new long[capacity];
+	this.hashes = new long[capacity];
+	this.payloads = new long[capacity];
+	// at most half of the slots are used
+	int slots = Integer.highestOneBit(Math.max(capacity, 1)) * 4;
+	this.hashSet = new long[slots];
+	this.hashSetUsed = new boolean[slots];
+	this.hashSetMask = slots - 1;
+    }
+
+    /**
+     * @param key
+     *            the key of a candidate
+     * @return <code>true</code> if a candidate with that key would be kept
+     */
+    public boolean accepts(long key) {
+	return size < capacity || key > keys[0];
+    }
+
+    /**
+     * adds a candidate, if its key is high enough and there is no candidate
+     * with the same hash yet. The worst candidate is dropped, if there are
+     * too many.
+     *
+     * @param key
+     *            the higher the better
+     * @param hash
+     *            candidates with the same hash are considered to be the same
+     * @param payload
+     *            anything that identifies the candidate
+     * @return <code>true</code> if the candidate is kept
+     */
+    public boolean offer(long key, long hash, long payload) {
+	if (!accepts(key) || containsHash(hash)) {
+	    return false;
+	}
+	if (size < capacity) {
+	    set(size, key, hash, payload);
+	    siftUp(size++);
+	} else {
+	    removeHash(hashes[0]);
+	    set(0, key, hash, payload);
+	    siftDown(0);
+	}
+	addHash(hash);
+	return true;
+    }
+
+    public int size() {
+	return size;
+    }
+
+    public long getKey(int idx) {
+	return keys[idx];
+    }
+
+    public long getHash(int idx) {
+	return hashes[idx];
+    }
+
+    public long getPayload(int idx) {
+	return payloads[idx];
+    }
+
+    public void clear() {
+	size = 0;
+	Arrays.fill(hashSetUsed, false);
+    }
+
+    /**
+     * merges the candidates of several sets. Of candidates with the same hash
+     * only one is kept.
+     *
+     * @param parts
+     *            the sets to merge
+     * @param capacity
+     *            maximum number of candidates to return
+     * @return the best candidates sorted by descending key. The order doesn't
+     *         depend on the order of the parts. Don't offer anything to the
+     *         result.
+     */
+    public static TopCandidates merge(TopCandidates[] parts, int capacity) {
+	int total = 0;
+	for (TopCandidates part : parts) {
+	    total += part.size;
+	}
+	long[] allKeys = new long[total];
+	long[] allHashes = new long[total];
+	long[] allPayloads = new long[total];
+	Integer[] order = new Integer[total];
+	int cnt = 0;
+	for (TopCandidates part : parts) {
+	    for (int idx = 0; idx < part.size; idx++) {
+		allKeys[cnt] = part.keys[idx];
+		allHashes[cnt] = part.hashes[idx];
+		allPayloads[cnt] = part.payloads[idx];
+		order[cnt] = cnt;
+		cnt++;
+	    }
+	}
+	Arrays.sort(order, (a, b) -> {
+	    int result = Long.compare(allKeys[b], allKeys[a]);
+	    if (result == 0) {
+		result = Long.compare(allHashes[a], allHashes[b]);
+	    }
+	    if (result == 0) {
+		result = Long.compare(allPayloads[a], allPayloads[b]);
+	    }
+	    return result;
+	});
+
+	TopCandidates result = new TopCandidates(capacity);
+	for (int idx = 0; idx < total && result.size < capacity; idx++) {
+	    int candidate = order[idx];
+	    if (idx > 0 && allKeys[candidate] == allKeys[order[idx - 1]]
+		    && allHashes[candidate] == allHashes[order[idx - 1]]) {
+		// same candidate reached by another way
+		continue;
+	    }
+	    // sorted, so no heap order is needed
+	    result.set(result.size++, allKeys[candidate], allHashes[candidate], allPayloads[candidate]);
+	}
+	return result;
+    }
+
+    private int slot(long hash) {
+	return (int) ((hash * 0x9E3779B97F4A7C15L) >>> 32) & hashSetMask;
+    }
+
+    private boolean containsHash(long hash) {
+	for (int idx = slot(hash); hashSetUsed[idx]; idx = (idx + 1) & hashSetMask) {
+	    if (hashSet[idx] == hash) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private void addHash(long hash) {
+	int idx = slot(hash);
+	while (hashSetUsed[idx]) {
+	    idx = (idx + 1) & hashSetMask;
+	}
+	hashSet[idx] = hash;
+	hashSetUsed[idx] = true;
+    }
+
+    private void removeHash(long hash) {
+	int hole = slot(hash);
+	while (hashSet[hole] != hash || !hashSetUsed[hole]) {
+	    hole = (hole + 1) & hashSetMask;
+	}
+	hashSetUsed[hole] = false;
+	// move the following entries back, so every entry can be found from its slot
+	for (int idx = (hole + 1) & hashSetMask; hashSetUsed[idx]; idx = (idx + 1) & hashSetMask) {
+	    int home = slot(hashSet[idx]);
+	    if (((idx - home) & hashSetMask) >= ((idx - hole) & hashSetMask)) {
+		hashSet[hole] = hashSet[idx];
+		hashSetUsed[hole] = true;
+		hashSetUsed[idx] = false;
+		hole = idx;
+	    }
+	}
+    }
+
+    private void set(int idx, long key, long hash, long payload) {
+	keys[idx] = key;
+	hashes[idx] = hash;
+	payloads[idx] = payload;
+    }
+
+    private void swap(int a, int b) {
+	long key = keys[a];
+	long hash = hashes[a];
+	long payload = payloads[a];
+	set(a, keys[b], hashes[b], payloads[b]);
+	set(b, key, hash, payload);
+    }
+
+    private void siftUp(int idx) {
+	while (idx > 0) {
+	    int parent = (idx - 1) / 2;
+	    if (keys[parent] <= keys[idx]) {
+		return;
+	    }
+	    swap(parent, idx);
+	    idx = parent;
+	}
+    }
+
+    private void siftDown(int idx) {
+	while (true) {
+	    int smallest = idx;
+	    int left = 2 * idx + 1;
+	    int right = left + 1;
+	    if (left < size && keys[left] < keys[smallest]) {
+		smallest = left;
+	    }
+	    if (right < size && keys[right] < keys[smallest]) {
+		smallest = right;
+	    }
+	    if (smallest == idx) {
+		return;
+	    }
+	    swap(smallest, idx);
+	    idx = smallest;
+	}
+    }
+}
@@ -0,0 +1,149 @@
+package de.andre.process.util;
+
+/**
+ * A fixed size, lossy table of statistics per layout hash (see
+ * {@link de.andre.data.IFoEGameboard#getLayoutHash()}). All data is kept in
+ * primitive arrays, so the memory usage never grows. When two layouts compete
+ * for the same slot, the {@link ReplacementPolicy} decides which one is kept.
+ * The table is thread safe.
+ *
+ * @author Andre
+ */
+public class TranspositionTable {
+    private static final int LOCK_STRIPES = 64;
+
+    public enum ReplacementPolicy {
+	/** a new layout always replaces the old one */
+	ALWAYS,
+	/**
+	 * an old layout survives as many collisions as it has visits (visits
+	 * are halved on every collision), so often visited layouts stay longer
+	 */
+	PREFER_VISITED
+    }
+
+    private final ReplacementPolicy policy;
+    private final int mask;
+    private final long[] keys;
+    /** number of visits, 0 marks an empty slot */
+    private final int[] visits;
+    private final long[] ratingSums;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * @param sizeBits
+     *            the table has 2^sizeBits slots
+     * @param policy
+     *            what to do, if two layouts compete for the same slot
+     */
+    public TranspositionTable(int sizeBits, ReplacementPolicy policy) {
+	if (sizeBits < 1 || sizeBits > 30) {
+	    throw new IllegalArgumentException("sizeBits (" + sizeBits + ") must be between 1 and 30");
+	}
+
+	int size = 1 << sizeBits;
+	this.policy = policy;
+	this.mask = size - 1;
+	this.keys = new long[size];
+	this.visits = new int[size];
+	this.ratingSums = new long[size];
+	for (int idx = 0; idx < locks.length; idx++) {
+	    locks[idx] = new Object();
+	}
+    }
+
+    private int slot(long hash) {
+	// the low bits of a Zobrist hash are as random as the high bits
+	return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * marks the layout as visited
+     *
+     * @param hash
+     *            layout hash
+     * @return <code>true</code> if the layout was known before
+     */
+    public boolean markVisited(long hash) {
+	return record(hash, 0L) > 0;
+    }
+
+    /**
+     * records the result of one playdown started at the given layout
+     *
+     * @param hash
+     *            layout hash
+     * @param score
+     *            rating at the end of the playdown
+     */
+    public void addPlaydown(long hash, int score) {
+	record(hash, score);
+    }
+
+    /**
+     * @param hash
+     *            layout hash
+     * @param ratingSum
+     *            amount to add to the sum of ratings
+     * @return number of visits before this one, 0 if the layout was unknown or
+     *         the slot is occupied by another layout that was kept
+     */
+    private int record(long hash, long ratingSum) {
+	int idx = slot(hash);
+	synchronized (locks[idx & (LOCK_STRIPES - 1)]) {
+	    if (visits[idx] > 0 && keys[idx] == hash) {
+		// known layout
+		int oldVisits = visits[idx];
+		if (oldVisits < Integer.MAX_VALUE) {
+		    visits[idx]++;
+		}
+		ratingSums[idx] += ratingSum;
+		return oldVisits;
+	    }
+
+	    if (visits[idx] > 0 && policy == ReplacementPolicy.PREFER_VISITED && visits[idx] > 1) {
+		// keep the other layout, but let it age. The mean rating is kept.
+		int oldVisits = visits[idx];
+		visits[idx] = oldVisits / 2;
+		ratingSums[idx] = (long) (ratingSums[idx] * (visits[idx] / (double) oldVisits));
+		return 0;
+	    }
+
+	    keys[idx] = hash;
+	    visits[idx] = 1;
+	    ratingSums[idx] = ratingSum;
+	    return 0;
+	}
+    }
+
+    /**
+     * @param hash
+     *            layout hash
+     * @return number of visits (or playdowns) of that layout, 0 if unknown
+     */
+    public int getVisits(long hash) {
+	int idx = slot(hash);
+	synchronized (locks[idx & (LOCK_STRIPES - 1)]) {
+	    return (visits[idx] > 0 && keys[idx] == hash ? visits[idx] : 0);
+	}
+    }
+
+    /**
+     * @param hash
+     *            layout hash
+     * @return sum of the scores of all playdowns, 0 if unknown
+     */
+    public long getRatingSum(long hash) {
+	int idx = slot(hash);
+	synchronized (locks[idx & (LOCK_STRIPES - 1)]) {
+	    return (visits[idx] > 0 && keys[idx] == hash ? ratingSums[idx] : 0L);
+	}
+    }
+
+    /**
+     * @return number of slots
+     */
+    public int capacity() {
+	return keys.length;
+    }
+}
@@ -0,0 +1,90 @@
+package de.andre.data;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+
+/**
+ * Checks the rules of the construction on a board.
+ *
+ * @author Andre
+ */
+public final class BoardRules {
+    private static final TileState HOUSE = TileState.HOUSE;
+    private static final TileState CASTLE = TileState.CASTLE;
+
+    private BoardRules() {
+    }
+
+    /**
+     * checks the rules of the construction: every way is connected to the
+     * castle and every house touches a way
+     */
+    public static void assertRules(String message, IFoEGameboard board) {
+	int width = board.getWidth();
+	int height = board.getHeight();
+	boolean[] reached = new boolean[width * height];
+	ArrayDeque<Integer> pending = new ArrayDeque<>();
+	for (int tile = 0; tile < width * height; tile++) {
+	    if (board.getBuilding(tile % width, tile / width) == CASTLE) {
+		reached[tile] = true;
+		pending.add(tile);
+	    }
+	}
+	while (!pending.isEmpty()) {
+	    int tile = pending.poll();
+	    int x = tile % width;
+	    int y = tile / width;
+	    int[][] neighbours = { { x - 1, y }, { x + 1, y }, { x, y - 1 }, { x, y + 1 } };
+	    for (int[] neighbour : neighbours) {
+		int next = neighbour[1] * width + neighbour[0];
+		if (getBuilding(board, neighbour[0], neighbour[1]) == TileState.WAY && !reached[next]) {
+		    reached[next] = true;
+		    pending.add(next);
+		}
+	    }
+	}
+
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		TileState building = board.getBuilding(x, y);
+		if (building == TileState.WAY) {
+		    assertTrue(message + ", way at " + x + "/" + y + " is connected", reached[y * width + x]);
+		} else if (building == HOUSE && getBuilding(board, x, y - 1) != HOUSE
+			&& getBuilding(board, x - 1, y) != HOUSE) {
+		    // houses don't overlap, so this is the top-left tile
+		    assertTrue(message + ", house at " + x + "/" + y + " touches a way", touchesWay(board, x, y));
+		}
+	    }
+	}
+    }
+
+    /**
+     * @return <code>true</code> if a way touches the border of the house
+     */
+    private static boolean touchesWay(IFoEGameboard board, int x, int y) {
+	for (int dx = 0; dx < HOUSE.getWidth(); dx++) {
+	    if (getBuilding(board, x + dx, y - 1) == TileState.WAY
+		    || getBuilding(board, x + dx, y + HOUSE.getHeight()) == TileState.WAY) {
+		return true;
+	    }
+	}
+	for (int dy = 0; dy < HOUSE.getHeight(); dy++) {
+	    if (getBuilding(board, x - 1, y + dy) == TileState.WAY
+		    || getBuilding(board, x + HOUSE.getWidth(), y + dy) == TileState.WAY) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * @return the building or <code>null</code> outside of the board
+     */
+    private static TileState getBuilding(IFoEGameboard board, int x, int y) {
+	if (x < 0 || y < 0 || x >= board.getWidth() || y >= board.getHeight()) {
+	    return null;
+	}
+	return board.getBuilding(x, y);
+    }
+}
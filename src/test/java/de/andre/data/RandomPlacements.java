@@ -0,0 +1,80 @@
+package de.andre.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+import de.andre.data.impl.BitPlaneBoard;
+import de.andre.data.impl.CopyOnWriteBoard;
+import de.andre.data.impl.Integer1DimArrayBoard;
+
+/**
+ * Creates random game fields for the tests.
+ *
+ * @author Andre
+ */
+public final class RandomPlacements {
+    private RandomPlacements() {
+    }
+
+    /**
+     * @return the parameters of a {@link org.junit.runners.Parameterized} test
+     *         running on every board implementation: the name of the
+     *         implementation and a factory, that takes the width and the
+     *         height
+     */
+    public static List<Object[]> boardFactories() {
+	List<Object[]> factories = new ArrayList<>();
+	addFactory(factories, "Integer1DimArrayBoard", Integer1DimArrayBoard::new);
+	addFactory(factories, "BitPlaneBoard", BitPlaneBoard::new);
+	addFactory(factories, "CopyOnWriteBoard", CopyOnWriteBoard::new);
+	return factories;
+    }
+
+    private static void addFactory(List<Object[]> factories, String name,
+	    BiFunction<Integer, Integer, IFoEGameboard> factory) {
+	factories.add(new Object[] { name, factory });
+    }
+
+    /**
+     * places the building at one of its placement options chosen at random
+     *
+     * @return the placement packed as {@link Tile#pack(int, int, TileState)}
+     *         or -1, if there is no option
+     */
+    public static int placeRandomly(IFoEGameboard board, TileState building, Random r) {
+	int optionCnt = board.countPlacementOptions(building);
+	if (optionCnt == 0) {
+	    return -1;
+	}
+	int option = board.getPlacementOption(building, r.nextInt(optionCnt));
+	board.placeBuildingWithoutAnyChecks(Tile.unpackX(option), Tile.unpackY(option), building);
+	return option;
+    }
+
+    /**
+     * @return a house or a way, houses are chosen twice as often
+     */
+    public static TileState randomBuilding(Random r) {
+	return r.nextInt(3) < 2 ? TileState.HOUSE : TileState.WAY;
+    }
+
+    /**
+     * @return boards with a castle and up to <code>maxPlacements</code>
+     *         random houses and ways, most of them with different layouts
+     */
+    public static List<IFoEGameboard> createBoards(int width, int height, int cnt, int maxPlacements, Random r) {
+	List<IFoEGameboard> boards = new ArrayList<>(cnt);
+	for (int idx = 0; idx < cnt; idx++) {
+	    IFoEGameboard board = new BitPlaneBoard(width, height);
+	    placeRandomly(board, TileState.CASTLE, r);
+	    int placements = r.nextInt(maxPlacements + 1);
+	    for (int placement = 0; placement < placements; placement++) {
+		placeRandomly(board, randomBuilding(r), r);
+	    }
+	    boards.add(board);
+	}
+	return boards;
+    }
+}
@@ -0,0 +1,94 @@
+package de.andre.data.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.RandomPlacements;
+import de.andre.data.Tile;
+import de.andre.data.TileState;
+
+/**
+ * Plays random games on a {@link BitPlaneBoard} and an
+ * {@link Integer1DimArrayBoard} and compares the placement options of both
+ * boards after every placement. The option planes of the bit plane board are
+ * updated incrementally, the other board looks at every tile, so both must
+ * agree all the time.
+ *
+ * @author Andre
+ */
+public class BitPlaneBoardTest {
+    private static final TileState[] BUILDINGS = { TileState.CASTLE, TileState.HOUSE, TileState.WAY };
+
+    @Test
+    public void placementOptionsMatchReference() {
+	Random r = new Random(3);
+	int[][] sizes = { { 10, 9 }, { 13, 7 }, { 24, 20 }, { BitPlaneBoard.MAX_WIDTH, 12 } };
+	for (int[] size : sizes) {
+	    for (int game = 0; game < 10; game++) {
+		playAndCompare(new BitPlaneBoard(size[0], size[1]), new Integer1DimArrayBoard(size[0], size[1]), r);
+	    }
+	}
+    }
+
+    private static void playAndCompare(IFoEGameboard board, IFoEGameboard reference, Random r) {
+	String game = board.getWidth() + " x " + board.getHeight();
+	assertSameOptions(game + ", empty board", board, reference);
+
+	int option = RandomPlacements.placeRandomly(reference, TileState.CASTLE, r);
+	int placements = 0;
+	while (option >= 0) {
+	    board.placeBuildingWithoutAnyChecks(Tile.unpackX(option), Tile.unpackY(option), Tile.unpackBuilding(option));
+	    placements++;
+	    assertSameOptions(game + ", placement " + placements, board, reference);
+
+	    option = RandomPlacements.placeRandomly(reference, RandomPlacements.randomBuilding(r), r);
+	    if (option < 0) {
+		// maybe there is an option for the other building
+		option = RandomPlacements.placeRandomly(reference, TileState.HOUSE, r);
+	    }
+	    if (option < 0) {
+		option = RandomPlacements.placeRandomly(reference, TileState.WAY, r);
+	    }
+	}
+    }
+
+    static void assertSameOptions(String message, IFoEGameboard board, IFoEGameboard reference) {
+	assertEquals(message, reference, board);
+	assertEquals(message + ", rating", reference.getRating(), board.getRating());
+	assertEquals(message + ", upper bound", reference.getRatingUpperBound(), board.getRatingUpperBound());
+
+	int[] buffer = new int[board.getWidth() * board.getHeight()];
+	for (TileState building : BUILDINGS) {
+	    String msg = message + ", " + building;
+	    int cnt = reference.countPlacementOptions(building);
+	    assertEquals(msg, cnt, board.countPlacementOptions(building));
+
+	    int[] expected = Arrays.copyOf(buffer, reference.getPlacementOptions(building, buffer));
+	    Arrays.sort(expected);
+	    int[] options = new int[cnt];
+	    for (int idx = 0; idx < cnt; idx++) {
+		options[idx] = board.getPlacementOption(building, idx);
+	    }
+	    Arrays.sort(options);
+	    assertArrayEquals(msg, expected, options);
+
+	    int[] written = Arrays.copyOf(buffer, board.getPlacementOptions(building, buffer));
+	    Arrays.sort(written);
+	    assertArrayEquals(msg, expected, written);
+
+	    // including positions outside of the board
+	    for (int y = -1; y <= board.getHeight(); y++) {
+		for (int x = -1; x <= board.getWidth(); x++) {
+		    assertEquals(msg + " at " + x + "/" + y, reference.canPlaceBuilding(x, y, building),
+			    board.canPlaceBuilding(x, y, building));
+		}
+	    }
+	}
+    }
+}
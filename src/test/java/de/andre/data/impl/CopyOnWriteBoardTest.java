@@ -0,0 +1,54 @@
+package de.andre.data.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.RandomPlacements;
+import de.andre.data.Tile;
+import de.andre.data.TileState;
+
+/**
+ * Clones {@link CopyOnWriteBoard}s at random and changes originals and clones
+ * afterwards. Every board has a twin of {@link Integer1DimArrayBoard}, that
+ * gets the same placements, so a change leaking into a board sharing the
+ * chunk shows up as a difference.
+ *
+ * @author Andre
+ */
+public class CopyOnWriteBoardTest {
+
+    @Test
+    public void clonesAreIndependent() {
+	Random r = new Random(11);
+	List<IFoEGameboard> boards = new ArrayList<>();
+	List<IFoEGameboard> twins = new ArrayList<>();
+	// more than 64 rows, so there are more chunks than bits in a long
+	boards.add(new CopyOnWriteBoard(12, 70));
+	twins.add(new Integer1DimArrayBoard(12, 70));
+
+	for (int step = 0; step < 3000; step++) {
+	    int idx = r.nextInt(boards.size());
+	    if (boards.size() < 50 && r.nextInt(3) == 0) {
+		boards.add(boards.get(idx).clone());
+		twins.add(twins.get(idx).clone());
+	    } else {
+		TileState building = (step == 0 ? TileState.CASTLE : RandomPlacements.randomBuilding(r));
+		int option = RandomPlacements.placeRandomly(twins.get(idx), building, r);
+		if (option >= 0) {
+		    boards.get(idx).placeBuildingWithoutAnyChecks(Tile.unpackX(option), Tile.unpackY(option),
+			    building);
+		}
+	    }
+
+	    for (int board = 0; board < boards.size(); board++) {
+		assertEquals("step " + step + ", board " + board, twins.get(board), boards.get(board));
+	    }
+	}
+    }
+}
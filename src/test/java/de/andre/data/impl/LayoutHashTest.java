@@ -0,0 +1,91 @@
+package de.andre.data.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.RandomPlacements;
+
+/**
+ * Checks the invariants of the Zobrist hashes: the layout hash depends on the
+ * tiles only, not on the order of the placements, and the canonical hash is
+ * the same for a layout and its horizontal and vertical mirror images. It
+ * runs on every board implementation.
+ *
+ * @author Andre
+ */
+@RunWith(Parameterized.class)
+public class LayoutHashTest {
+    @Parameter(0)
+    public String implementation;
+    @Parameter(1)
+    public BiFunction<Integer, Integer, IFoEGameboard> factory;
+
+    @Parameters(name = "{0}")
+    public static List<Object[]> boardFactories() {
+	return RandomPlacements.boardFactories();
+    }
+
+    @Test
+    public void hashInvariants() {
+	Random r = new Random(6);
+	int differentMirrorImages = 0;
+	for (int[] size : new int[][] { { 10, 9 }, { 13, 8 }, { 24, 20 } }) {
+	    List<IFoEGameboard> layouts = RandomPlacements.createBoards(size[0], size[1], 100, 30, r);
+	    for (IFoEGameboard layout : layouts) {
+		// the same tiles, set in another order by another implementation
+		IFoEGameboard board = mirror(layout, false, false, factory);
+		assertEquals(layout, board);
+		assertEquals(layout.getLayoutHash(), board.getLayoutHash());
+		assertEquals(layout.getCanonicalHash(), board.getCanonicalHash());
+		assertEquals(layout.hashCode(), board.hashCode());
+
+		for (int mirror = 1; mirror < 4; mirror++) {
+		    IFoEGameboard image = mirror(layout, (mirror & 1) != 0, (mirror & 2) != 0, factory);
+		    assertEquals("mirror " + mirror, layout.getRating(), image.getRating());
+		    assertEquals("mirror " + mirror, layout.getCanonicalHash(), image.getCanonicalHash());
+		    if (!layout.equals(image)) {
+			assertNotEquals("mirror " + mirror, layout.getLayoutHash(), image.getLayoutHash());
+			differentMirrorImages++;
+		    }
+		}
+	    }
+	}
+	// the castle is never in the center, so most mirror images differ
+	assertTrue(differentMirrorImages > 500);
+    }
+
+    /**
+     * @return a new board with the tiles of the given board mirrored
+     */
+    private static IFoEGameboard mirror(IFoEGameboard board, boolean mirrorX, boolean mirrorY,
+	    BiFunction<Integer, Integer, IFoEGameboard> factory) {
+	int width = board.getWidth();
+	int height = board.getHeight();
+	int wordsPerRow = PackedTiles.wordsPerRow(width);
+	long[] packed = new long[board.getPackedSize()];
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		int targetX = (mirrorX ? width - 1 - x : x);
+		int targetY = (mirrorY ? height - 1 - y : y);
+		int wordIndex = targetY * wordsPerRow + targetX / PackedTiles.TILES_PER_WORD;
+		int bitPosition = (targetX % PackedTiles.TILES_PER_WORD) * 2;
+		packed[wordIndex] |= (long) PackedTiles.toCode(board.getBuilding(x, y)) << bitPosition;
+	    }
+	}
+	IFoEGameboard image = factory.apply(width, height);
+	image.importPacked(packed, 0);
+	return image;
+    }
+}
@@ -0,0 +1,118 @@
+package de.andre.data.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.RandomPlacements;
+import de.andre.data.Tile;
+import de.andre.data.TileState;
+
+/**
+ * Places buildings undoable and undoes them in random order on every board
+ * implementation. After every undo the board must be the same as before the
+ * placement: tiles, rating, hashes and placement options. The placements
+ * aren't checked, so they may overlap other buildings and the border of the
+ * board.
+ *
+ * @author Andre
+ */
+@RunWith(Parameterized.class)
+public class UndoablePlacementTest {
+    private static final TileState[] BUILDINGS = { TileState.CASTLE, TileState.HOUSE, TileState.WAY };
+
+    @Parameter(0)
+    public String implementation;
+    @Parameter(1)
+    public BiFunction<Integer, Integer, IFoEGameboard> factory;
+
+    @Parameters(name = "{0}")
+    public static List<Object[]> boardFactories() {
+	return RandomPlacements.boardFactories();
+    }
+
+    @Test
+    public void roundTrips() {
+	Random r = new Random(5);
+	int width = 13;
+	int height = 11;
+	IFoEGameboard board = factory.apply(width, height);
+	IFoEGameboard empty = board.clone();
+	ArrayDeque<IFoEGameboard> before = new ArrayDeque<>();
+
+	for (int step = 0; step < 2000; step++) {
+	    String message = "step " + step;
+	    if (before.isEmpty() || r.nextInt(5) < 3) {
+		before.push(board.clone());
+		TileState building = BUILDINGS[r.nextInt(BUILDINGS.length)];
+		if (r.nextBoolean() && board.countPlacementOptions(building) > 0) {
+		    int option = board.getPlacementOption(building, r.nextInt(board.countPlacementOptions(building)));
+		    board.placeBuildingUndoable(Tile.unpackX(option), Tile.unpackY(option), building);
+		} else {
+		    board.placeBuildingUndoable(r.nextInt(width + 2) - 2, r.nextInt(height + 2) - 2, building);
+		}
+	    } else {
+		board.undoLastPlacement();
+		IFoEGameboard expected = before.pop();
+		assertEquals(message, expected, board);
+		assertEquals(message, expected.getOccupiedTiles(), board.getOccupiedTiles());
+		assertEquals(message, expected.getCanonicalHash(), board.getCanonicalHash());
+		BitPlaneBoardTest.assertSameOptions(message, board, reference(board));
+	    }
+	    assertEquals(message, before.size(), board.getUndoablePlacements());
+	}
+
+	while (!before.isEmpty()) {
+	    board.undoLastPlacement();
+	    assertEquals(before.pop(), board);
+	}
+	assertEquals(empty, board);
+	assertEquals(empty.getLayoutHash(), board.getLayoutHash());
+	BitPlaneBoardTest.assertSameOptions("empty board", board, reference(board));
+	try {
+	    board.undoLastPlacement();
+	    fail("there is nothing to undo");
+	} catch (IllegalStateException e) {
+	    // expected
+	}
+    }
+
+    @Test
+    public void cloneAndImportCannotBeUndone() {
+	Random r = new Random(8);
+	IFoEGameboard board = factory.apply(10, 9);
+	RandomPlacements.placeRandomly(board, TileState.CASTLE, r);
+	int option = board.getPlacementOption(TileState.WAY, 0);
+	board.placeBuildingUndoable(Tile.unpackX(option), Tile.unpackY(option), TileState.WAY);
+	assertEquals(1, board.getUndoablePlacements());
+	assertEquals(0, board.clone().getUndoablePlacements());
+
+	long[] packed = new long[board.getPackedSize()];
+	board.exportPacked(packed, 0);
+	board.importPacked(packed, 0);
+	assertEquals(0, board.getUndoablePlacements());
+    }
+
+    /**
+     * @return a board with the same tiles, that has never seen a placement
+     *         nor an undo
+     */
+    private static IFoEGameboard reference(IFoEGameboard board) {
+	long[] packed = new long[board.getPackedSize()];
+	board.exportPacked(packed, 0);
+	IFoEGameboard reference = new Integer1DimArrayBoard(board.getWidth(), board.getHeight());
+	reference.importPacked(packed, 0);
+	return reference;
+    }
+}
@@ -0,0 +1,49 @@
+package de.andre.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.andre.data.impl.BitPlaneBoard;
+import de.andre.process.util.Checkpoint;
+
+/**
+ * Runs the construction with a checkpoint due all the time, so the writer
+ * is busy while the run ends. The last checkpoint must be the one of the end
+ * of the run and the writer must be gone afterwards.
+ *
+ * @author Andre
+ */
+public class EndlessConstructionTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void lastCheckpointIsWrittenAtTheEnd() throws IOException {
+	Path file = folder.getRoot().toPath().resolve("run.checkpoint");
+	EndlessConstruction engine = TestEngines.configure(new EndlessConstruction(), 10, 7, 16);
+	ReflectionTestUtils.setField(engine, "THREADS", 2);
+	ReflectionTestUtils.setField(engine, "BUDGET_MAX_BOARDS", 50000L);
+	ReflectionTestUtils.setField(engine, "CHECKPOINT_FILE", file.toString());
+	ReflectionTestUtils.setField(engine, "CHECKPOINT_INTERVAL_SECONDS", 0L);
+	engine.runDBExperiment();
+
+	Checkpoint checkpoint = Checkpoint.read(file, new BitPlaneBoard(10, 7));
+	assertEquals("EndlessConstruction", checkpoint.getEngine());
+	assertEquals(2, checkpoint.getRandoms().size());
+	assertFalse(checkpoint.getTopGamefields().isEmpty());
+	assertEquals(engine.getMaxRatingUntilNow(), checkpoint.getTopGamefields().get(0).getRating());
+	assertEquals(engine.getBestRatedGamefield(), checkpoint.getTopGamefields().get(0));
+	for (Thread thread : Thread.getAllStackTraces().keySet()) {
+	    assertTrue("the writer ended with the run", !thread.getName().equals("CheckpointWriter") || !thread.isAlive());
+	}
+    }
+}
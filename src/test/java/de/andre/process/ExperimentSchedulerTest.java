@@ -0,0 +1,51 @@
+package de.andre.process;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+import de.andre.data.db.DBExperiment;
+import de.andre.process.ExperimentScheduler.Experiment;
+
+/**
+ * Scans the engines and the scheduler like the application does, but without
+ * a database. The engines must be created by the experiments only.
+ *
+ * @author Andre
+ */
+public class ExperimentSchedulerTest {
+
+    @Test
+    public void enginesAreCreatedPerExperiment() throws IOException {
+	List<String> drivers = Collections.synchronizedList(new ArrayList<>());
+	try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+	    context.getEnvironment().getPropertySources()
+		    .addFirst(new ResourcePropertySource("classpath:application-mysql.properties"));
+	    // a singleton, so there is no entity manager to inject
+	    context.getBeanFactory().registerSingleton("repository", new TestEngines.NoDatabaseRepository() {
+		@Override
+		public DBExperiment save(DBExperiment exp) {
+		    drivers.add(exp.getDriver());
+		    return exp;
+		}
+	    });
+	    context.scan(ExperimentScheduler.class.getPackage().getName());
+	    context.refresh();
+	    assertEquals(0, context.getBeanNamesForType(AbstractOptimization.class).length);
+
+	    context.getBean(ExperimentScheduler.class).runAll(Experiment.parseAll(
+		    "ProfileDynamicProgramming gamefield.width=8 gamefield.height=6; "
+			    + "ParallelBeamSearch gamefield.width=8 gamefield.height=6 budget.max.boards=2000"));
+	    assertEquals(0, context.getBeanNamesForType(AbstractOptimization.class).length);
+	}
+	Collections.sort(drivers);
+	assertEquals("[ParallelBeamSearch, ProfileDynamicProgramming]", drivers.toString());
+    }
+}
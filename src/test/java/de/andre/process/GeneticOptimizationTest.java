@@ -0,0 +1,82 @@
+package de.andre.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.andre.data.BoardRules;
+import de.andre.data.IFoEGameboard;
+import de.andre.data.impl.BitPlaneBoard;
+import de.andre.data.impl.PackedTiles;
+
+/**
+ * Checks the masks of the crossover and runs the genetic algorithm on small
+ * populations: every child must follow the rules of the construction after
+ * its repair and the elite of a generation must be distinct.
+ *
+ * @author Andre
+ */
+public class GeneticOptimizationTest {
+
+    @Test
+    public void regionMaskCoversTheColumnsOfTheRegion() {
+	int width = 3 * PackedTiles.TILES_PER_WORD;
+	for (int x0 = 0; x0 < width; x0++) {
+	    for (int x1 = x0 + 1; x1 <= width; x1++) {
+		for (int word = 0; word < 3; word++) {
+		    long expected = 0L;
+		    for (int x = x0; x < x1; x++) {
+			if (x / PackedTiles.TILES_PER_WORD == word) {
+			    expected |= 0B11L << ((x % PackedTiles.TILES_PER_WORD) * 2);
+			}
+		    }
+		    assertEquals(x0 + " - " + x1 + ", word " + word, expected,
+			    GeneticOptimization.regionMask(word, x0, x1));
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void childrenKeepTheRules() {
+	// the second board has two words per row
+	int[][] sizes = { { 24, 20 }, { PackedTiles.TILES_PER_WORD + 8, 12 } };
+	for (int[] size : sizes) {
+	    int[] generations = new int[1];
+	    GeneticOptimization engine = new GeneticOptimization() {
+		@Override
+		void generationCreated(long[] genomes, int[] fitness, int elite) {
+		    generations[0]++;
+		    checkGeneration(size[0], size[1], genomes, fitness, elite);
+		}
+	    };
+	    TestEngines.configure(engine, size[0], size[1], 19);
+	    ReflectionTestUtils.setField(engine, "POPULATION", 200);
+	    ReflectionTestUtils.setField(engine, "ELITE", 20);
+	    ReflectionTestUtils.setField(engine, "THREADS", 2);
+	    ReflectionTestUtils.setField(engine, "BUDGET_MAX_BOARDS", 6000L);
+	    engine.runDBExperiment();
+	    assertTrue(generations[0] > 20);
+	}
+    }
+
+    private static void checkGeneration(int width, int height, long[] genomes, int[] fitness, int elite) {
+	IFoEGameboard board = new BitPlaneBoard(width, height);
+	int packedSize = board.getPackedSize();
+	Set<Long> eliteLayouts = new HashSet<>();
+	for (int idx = 0; idx < fitness.length; idx++) {
+	    board.importPacked(genomes, idx * packedSize);
+	    String message = width + " x " + height + ", layout " + idx;
+	    assertEquals(message, board.getRating(), fitness[idx]);
+	    BoardRules.assertRules(message, board);
+	    if (idx < elite) {
+		assertTrue(message + " is a copy of another elite layout", eliteLayouts.add(board.getLayoutHash()));
+	    }
+	}
+    }
+}
@@ -0,0 +1,51 @@
+package de.andre.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.andre.data.IFoEGameboard;
+
+/**
+ * Runs the beam search on a small board and checks every level: the layouts
+ * of a level are distinct, even if they are mirror images, and sorted by
+ * rating.
+ *
+ * @author Andre
+ */
+public class ParallelBeamSearchTest {
+
+    @Test
+    public void levelsAreDistinctAndReachTheOptimum() {
+	int[] levels = new int[1];
+	ParallelBeamSearch engine = new ParallelBeamSearch() {
+	    @Override
+	    void levelCreated(List<IFoEGameboard> level) {
+		levels[0]++;
+		Set<Long> hashes = new HashSet<>();
+		for (int idx = 0; idx < level.size(); idx++) {
+		    IFoEGameboard gamefield = level.get(idx);
+		    assertTrue("duplicate in level " + levels[0], hashes.add(gamefield.getCanonicalHash()));
+		    if (idx > 0) {
+			assertTrue(level.get(idx - 1).getRating() >= gamefield.getRating());
+		    }
+		}
+	    }
+	};
+	TestEngines.configure(engine, 10, 6, 14);
+	ReflectionTestUtils.setField(engine, "BEAM_WIDTH", 500);
+	ReflectionTestUtils.setField(engine, "PARALLELISM", 3);
+	ReflectionTestUtils.setField(engine, "BUDGET_MAX_BOARDS", 60000L);
+	engine.runDBExperiment();
+
+	assertTrue(levels[0] > 0);
+	// optimum found by ProfileDynamicProgramming
+	assertEquals(198, engine.getMaxRatingUntilNow());
+    }
+}
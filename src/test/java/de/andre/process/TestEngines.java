@@ -0,0 +1,53 @@
+package de.andre.process;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.andre.data.db.DBExperiment;
+import de.andre.data.db.DBExperimentParameter;
+import de.andre.data.db.DBRepository;
+import de.andre.data.db.DBSnapshot;
+
+/**
+ * Prepares engines for tests: without Spring and without a database.
+ *
+ * @author Andre
+ */
+final class TestEngines {
+
+    private TestEngines() {
+    }
+
+    /**
+     * sets a repository, that saves nothing, the size of the board and the
+     * seed. Other parameters keep their defaults, set them with
+     * {@link ReflectionTestUtils#setField(Object, String, Object)}.
+     *
+     * @return the engine
+     */
+    static <T extends AbstractOptimization> T configure(T engine, int width, int height, long seed) {
+	// by type, some engines have a repository of game fields as well
+	ReflectionTestUtils.setField(engine, "repository", new NoDatabaseRepository(), DBRepository.class);
+	ReflectionTestUtils.setField(engine, "GAMEFIELD_WIDTH", width);
+	ReflectionTestUtils.setField(engine, "GAMEFIELD_HEIGHT", height);
+	ReflectionTestUtils.setField(engine, "SEED", seed);
+	return engine;
+    }
+
+    /**
+     * saves nothing
+     */
+    static class NoDatabaseRepository extends DBRepository {
+	@Override
+	public DBExperiment save(DBExperiment exp) {
+	    return exp;
+	}
+
+	@Override
+	public void save(DBExperimentParameter param) {
+	}
+
+	@Override
+	public void save(DBSnapshot snapshot) {
+	}
+    }
+}
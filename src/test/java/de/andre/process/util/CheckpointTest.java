@@ -0,0 +1,128 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.RandomPlacements;
+import de.andre.data.TileState;
+import de.andre.data.impl.BitPlaneBoard;
+
+/**
+ * Writes checkpoints and reads them back.
+ *
+ * @author Andre
+ */
+public class CheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+	Random r = new Random(25);
+	List<IFoEGameboard> boards = RandomPlacements.createBoards(12, 10, 30, 20, r);
+	Random engineRandom = new Random(99);
+	engineRandom.nextInt();
+
+	Checkpoint checkpoint = new Checkpoint("EndlessConstruction");
+	checkpoint.getTopGamefields().addAll(boards.subList(0, 5));
+	checkpoint.getGamefields().addAll(boards.subList(5, boards.size()));
+	checkpoint.addRandom(engineRandom);
+	checkpoint.addRandom(new Random(7));
+	checkpoint.setValue("iteration", 1234567890123L);
+	checkpoint.setValue("negative", -1L);
+
+	Path file = folder.getRoot().toPath().resolve("run.checkpoint");
+	checkpoint.write(file);
+	assertFalse("the temporary file is moved", Files.exists(file.resolveSibling("run.checkpoint.tmp")));
+
+	Checkpoint read = Checkpoint.read(file, new BitPlaneBoard(12, 10));
+	assertEquals("EndlessConstruction", read.getEngine());
+	assertEquals(checkpoint.getTopGamefields(), read.getTopGamefields());
+	assertEquals(checkpoint.getGamefields(), read.getGamefields());
+	for (int idx = 0; idx < boards.size(); idx++) {
+	    IFoEGameboard expected = boards.get(idx);
+	    IFoEGameboard actual = (idx < 5 ? read.getTopGamefields().get(idx) : read.getGamefields().get(idx - 5));
+	    assertEquals(expected.getRating(), actual.getRating());
+	    assertEquals(expected.getCanonicalHash(), actual.getCanonicalHash());
+	    assertEquals(expected.countPlacementOptions(TileState.HOUSE), actual.countPlacementOptions(TileState.HOUSE));
+	}
+	assertEquals(checkpoint.getValues(), read.getValues());
+	assertEquals(1234567890123L, read.getValue("iteration", 0L));
+	assertEquals(42L, read.getValue("unknown", 42L));
+
+	// the restored generators go on with the same numbers
+	List<Random> randoms = read.getRandoms();
+	assertEquals(2, randoms.size());
+	for (int idx = 0; idx < 100; idx++) {
+	    assertEquals(engineRandom.nextLong(), randoms.get(0).nextLong());
+	}
+	assertEquals(new Random(7).nextLong(), randoms.get(1).nextLong());
+    }
+
+    @Test
+    public void emptyCheckpoint() throws IOException {
+	Path file = folder.getRoot().toPath().resolve("empty.checkpoint");
+	new Checkpoint("SimulatedAnnealing").write(file);
+
+	Checkpoint read = Checkpoint.read(file, new BitPlaneBoard(10, 9));
+	assertEquals("SimulatedAnnealing", read.getEngine());
+	assertTrue(read.getTopGamefields().isEmpty());
+	assertTrue(read.getGamefields().isEmpty());
+	assertTrue(read.getRandoms().isEmpty());
+	assertTrue(read.getValues().isEmpty());
+    }
+
+    @Test
+    public void replacesTheOldCheckpoint() throws IOException {
+	Path file = folder.getRoot().toPath().resolve("run.checkpoint");
+	Checkpoint first = new Checkpoint("EndlessConstruction");
+	first.setValue("iteration", 1L);
+	first.write(file);
+	Checkpoint second = new Checkpoint("EndlessConstruction");
+	second.setValue("iteration", 2L);
+	second.write(file);
+
+	assertEquals(2L, Checkpoint.read(file, new BitPlaneBoard(10, 9)).getValue("iteration", 0L));
+    }
+
+    @Test
+    public void rejectsOtherBoardSizes() throws IOException {
+	Path file = folder.getRoot().toPath().resolve("run.checkpoint");
+	Checkpoint checkpoint = new Checkpoint("EndlessConstruction");
+	checkpoint.getGamefields().addAll(RandomPlacements.createBoards(12, 10, 1, 5, new Random(1)));
+	checkpoint.write(file);
+
+	try {
+	    Checkpoint.read(file, new BitPlaneBoard(10, 12));
+	    fail("the board size differs");
+	} catch (IOException e) {
+	    // expected
+	}
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+	Path file = folder.newFile("other.bin").toPath();
+	Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+
+	try {
+	    Checkpoint.read(file, new BitPlaneBoard(10, 9));
+	    fail("it isn't a checkpoint");
+	} catch (IOException e) {
+	    // expected
+	}
+    }
+}
@@ -0,0 +1,139 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.RandomPlacements;
+
+/**
+ * Offers game fields to an {@link Incumbent}, from a single thread and from
+ * many threads at once.
+ *
+ * @author Andre
+ */
+public class IncumbentTest {
+    private static final int THREADS = 8;
+    private static final int OFFERS_PER_THREAD = 2000;
+
+    @Test
+    public void acceptsStrictImprovementsOnly() {
+	List<IFoEGameboard> boards = RandomPlacements.createBoards(10, 9, 200, 20, new Random(21));
+	boards.sort((a, b) -> Integer.compare(a.getRating(), b.getRating()));
+	IFoEGameboard worst = boards.get(0);
+	IFoEGameboard best = boards.get(boards.size() - 1);
+
+	Incumbent incumbent = new Incumbent();
+	assertNull(incumbent.get());
+	assertEquals(Integer.MIN_VALUE, incumbent.getRating());
+	assertTrue(incumbent.offer(worst));
+	assertFalse("same rating", incumbent.offer(worst.clone()));
+	assertTrue(incumbent.offerChanging(best));
+	assertNotSame("a clone is kept", best, incumbent.get().getGamefield());
+	assertEquals(best, incumbent.get().getGamefield());
+	assertFalse("worse", incumbent.offer(worst));
+	assertFalse("same rating", incumbent.offer(best));
+	assertEquals(best.getRating(), incumbent.getRating());
+    }
+
+    @Test
+    public void concurrentOffersEndAtTheMaximum() throws Exception {
+	List<IFoEGameboard> boards = RandomPlacements.createBoards(10, 9, 500, 20, new Random(21));
+	ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+	try {
+	    for (int round = 0; round < 200; round++) {
+		runRound(boards, new Random(round), executor);
+	    }
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    private static void runRound(List<IFoEGameboard> boards, Random r, ExecutorService executor) throws Exception {
+	Incumbent incumbent = new Incumbent();
+	CountDownLatch startSignal = new CountDownLatch(1);
+	AtomicBoolean done = new AtomicBoolean(false);
+	List<Callable<List<Integer>>> offerers = new ArrayList<>();
+	int max = Integer.MIN_VALUE;
+	for (int thread = 0; thread < THREADS; thread++) {
+	    IFoEGameboard[] offers = new IFoEGameboard[OFFERS_PER_THREAD];
+	    for (int idx = 0; idx < offers.length; idx++) {
+		offers[idx] = boards.get(r.nextInt(boards.size()));
+		max = Math.max(max, offers[idx].getRating());
+	    }
+	    // all threads climb at the same time, so they compete for every
+	    // rating
+	    Arrays.sort(offers, (a, b) -> Integer.compare(a.getRating(), b.getRating()));
+	    offerers.add(() -> {
+		List<Integer> accepted = new ArrayList<>();
+		startSignal.await();
+		for (IFoEGameboard offer : offers) {
+		    if (incumbent.offer(offer)) {
+			accepted.add(offer.getRating());
+		    }
+		}
+		return accepted;
+	    });
+	}
+
+	// a reader, that never sees the rating going down or a rating of
+	// another game field
+	Future<?> reader = executor.submit(() -> {
+	    startSignal.await();
+	    int lastRating = Integer.MIN_VALUE;
+	    while (!done.get()) {
+		int rating = incumbent.getRating();
+		assertTrue(rating >= lastRating);
+		lastRating = rating;
+		Incumbent.Entry entry = incumbent.get();
+		if (entry != null) {
+		    assertEquals(entry.getGamefield().getRating(), entry.getRating());
+		}
+	    }
+	    return null;
+	});
+	List<Future<List<Integer>>> results = new ArrayList<>();
+	for (Callable<List<Integer>> offerer : offerers) {
+	    results.add(executor.submit(offerer));
+	}
+	startSignal.countDown();
+
+	// every success raised the rating, so no rating is accepted twice
+	Set<Integer> acceptedRatings = new HashSet<>();
+	for (Future<List<Integer>> result : results) {
+	    int lastAccepted = Integer.MIN_VALUE;
+	    for (int rating : result.get()) {
+		assertTrue("accepted " + rating + " twice", acceptedRatings.add(rating));
+		assertTrue("improvement", rating > lastAccepted);
+		lastAccepted = rating;
+	    }
+	}
+	done.set(true);
+	// throws the failures of the reader
+	reader.get();
+
+	assertTrue(acceptedRatings.contains(max));
+	assertEquals(max, incumbent.getRating());
+	assertEquals(max, incumbent.get().getRating());
+	assertEquals(max, incumbent.get().getGamefield().getRating());
+	assertFalse(incumbent.offer(incumbent.get().getGamefield()));
+    }
+}
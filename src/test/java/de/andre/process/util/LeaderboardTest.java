@@ -0,0 +1,149 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.RandomPlacements;
+import de.andre.data.TileState;
+import de.andre.data.impl.BitPlaneBoard;
+
+/**
+ * Offers game fields to a {@link Leaderboard} and checks, which of them are
+ * kept.
+ *
+ * @author Andre
+ */
+public class LeaderboardTest {
+
+    @Test
+    public void keepsTheBestDistinctGamefields() {
+	List<IFoEGameboard> boards = RandomPlacements.createBoards(10, 9, 300, 20, new Random(22));
+	Leaderboard leaderboard = new Leaderboard(10);
+	Map<Long, Integer> distinct = new HashMap<>();
+	for (IFoEGameboard board : boards) {
+	    leaderboard.offer(board);
+	    distinct.put(board.getCanonicalHash(), board.getRating());
+	    assertTrue(leaderboard.size() <= 10);
+	}
+
+	List<Integer> expected = new ArrayList<>(distinct.values());
+	Collections.sort(expected, Collections.reverseOrder());
+	List<Leaderboard.Entry> entries = leaderboard.getEntries();
+	assertEquals(10, entries.size());
+	for (int idx = 0; idx < entries.size(); idx++) {
+	    assertEquals(expected.get(idx).intValue(), entries.get(idx).getRating());
+	    assertEquals(entries.get(idx).getRating(), entries.get(idx).getGamefield().getRating());
+	}
+	assertSame(entries.get(0), leaderboard.getBest());
+
+	// full, so only game fields better than the last one are accepted
+	int last = entries.get(9).getRating();
+	assertFalse(leaderboard.accepts(last));
+	assertTrue(leaderboard.accepts(last + 1));
+	IFoEGameboard worse = boards.stream().filter(board -> board.getRating() <= last).findFirst().get();
+	assertFalse(leaderboard.offer(worse));
+	assertEquals(entries, leaderboard.getEntries());
+    }
+
+    @Test
+    public void evictsTheWorstEntry() {
+	List<IFoEGameboard> boards = RandomPlacements.createBoards(10, 9, 300, 20, new Random(23));
+	boards.sort((a, b) -> Integer.compare(a.getRating(), b.getRating()));
+	IFoEGameboard worst = boards.get(0);
+	IFoEGameboard middle = boards.get(150);
+	IFoEGameboard best = boards.get(299);
+	assertTrue(worst.getRating() < middle.getRating() && middle.getRating() < best.getRating());
+
+	Leaderboard leaderboard = new Leaderboard(2);
+	assertTrue(leaderboard.accepts(Integer.MIN_VALUE + 1));
+	assertTrue(leaderboard.offer(middle));
+	assertTrue(leaderboard.offer(worst));
+	assertTrue(leaderboard.offer(best));
+	assertEquals(2, leaderboard.size());
+	assertSame(best, leaderboard.getEntries().get(0).getGamefield());
+	assertSame(middle, leaderboard.getEntries().get(1).getGamefield());
+	assertFalse(leaderboard.accepts(worst.getRating()));
+    }
+
+    @Test
+    public void keepsMirrorImagesOnce() {
+	int width = 10;
+	int castleWidth = TileState.CASTLE.getWidth();
+	IFoEGameboard board = new BitPlaneBoard(width, 9);
+	board.placeBuildingWithoutAnyChecks(0, 0, TileState.CASTLE);
+	board.placeBuildingWithoutAnyChecks(castleWidth, 0, TileState.WAY);
+	IFoEGameboard mirrorImage = new BitPlaneBoard(width, 9);
+	mirrorImage.placeBuildingWithoutAnyChecks(width - castleWidth, 0, TileState.CASTLE);
+	mirrorImage.placeBuildingWithoutAnyChecks(width - castleWidth - 1, 0, TileState.WAY);
+	assertNotEquals(board, mirrorImage);
+	assertEquals(board.getCanonicalHash(), mirrorImage.getCanonicalHash());
+
+	Leaderboard leaderboard = new Leaderboard(5);
+	assertTrue(leaderboard.offer(board));
+	assertFalse(leaderboard.offer(mirrorImage));
+	assertFalse(leaderboard.offerChanging(board));
+	assertEquals(1, leaderboard.size());
+    }
+
+    @Test
+    public void offerChangingKeepsAClone() {
+	IFoEGameboard board = RandomPlacements.createBoards(10, 9, 1, 10, new Random(24)).get(0);
+	Leaderboard leaderboard = new Leaderboard(5);
+	assertTrue(leaderboard.offerChanging(board));
+	assertNotSame(board, leaderboard.getBest().getGamefield());
+	assertEquals(board, leaderboard.getBest().getGamefield());
+    }
+
+    @Test
+    public void emptyLeaderboard() {
+	Leaderboard leaderboard = new Leaderboard(3);
+	assertEquals(0, leaderboard.size());
+	assertNull(leaderboard.getBest());
+	assertTrue(leaderboard.getEntries().isEmpty());
+	assertNull(leaderboard.sample(new Random(1)));
+    }
+
+    @Test
+    public void sampleReturnsEntries() {
+	List<IFoEGameboard> boards = RandomPlacements.createBoards(10, 9, 50, 20, new Random(25));
+	Leaderboard leaderboard = new Leaderboard(5);
+	for (IFoEGameboard board : boards) {
+	    leaderboard.offer(board);
+	}
+	Random r = new Random(2);
+	int bestSampled = 0;
+	for (int idx = 0; idx < 1000; idx++) {
+	    IFoEGameboard sample = leaderboard.sample(r);
+	    assertTrue(leaderboard.getEntries().stream().anyMatch(entry -> entry.getGamefield() == sample));
+	    bestSampled += (sample == leaderboard.getBest().getGamefield() ? 1 : 0);
+	}
+	// the better of two random entries: the best one in 9 of 25 samples
+	assertTrue(bestSampled > 250);
+    }
+
+    @Test
+    public void rejectsEmptyCapacity() {
+	try {
+	    new Leaderboard(0);
+	    fail("a leaderboard needs room for a game field");
+	} catch (IllegalArgumentException e) {
+	    // expected
+	}
+    }
+}
@@ -0,0 +1,178 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.andre.data.BoardRules;
+import de.andre.data.IFoEGameboard;
+import de.andre.data.RandomPlacements;
+import de.andre.data.TileState;
+
+/**
+ * Applies long sequences of random moves to a {@link LocalSearchLayout} and
+ * writes the layout to a board after every move. The board must have the
+ * rating of the layout and must follow the rules of the construction: every
+ * way is connected to the castle and every house touches a way. Moves, that
+ * are rejected, must not change anything.
+ *
+ * @author Andre
+ */
+public class LocalSearchLayoutTest {
+    private static final TileState HOUSE = TileState.HOUSE;
+    private static final TileState CASTLE = TileState.CASTLE;
+
+    private int removedWays;
+    private int housesOnWays;
+    private int castleMoves;
+    private int castleRollbacks;
+
+    @Test
+    public void randomMovesKeepTheRules() {
+	Random r = new Random(18);
+	for (int[] size : new int[][] { { 10, 9 }, { 13, 11 }, { 24, 20 } }) {
+	    for (IFoEGameboard start : RandomPlacements.createBoards(size[0], size[1], 8, 40, r)) {
+		BoardRules.assertRules("start", start);
+		LocalSearchLayout layout = new LocalSearchLayout(start);
+		assertEquals(start.getRating(), layout.getRating());
+		IFoEGameboard board = start.clone();
+		for (int move = 0; move < 5000; move++) {
+		    applyRandomMove(layout, board, r);
+		    String message = size[0] + " x " + size[1] + ", move " + move;
+		    layout.writeTo(board);
+		    assertEquals(message, board.getRating(), layout.getRating());
+		    BoardRules.assertRules(message, board);
+		    assertHouses(message, layout, board);
+		}
+	    }
+	}
+	// every kind of move, including the rare ones, has been tested
+	assertTrue(removedWays > 1000);
+	assertTrue(housesOnWays > 100);
+	assertTrue(castleMoves > 50);
+	assertTrue(castleRollbacks > 50);
+    }
+
+    /**
+     * applies a random move, if it's allowed
+     *
+     * @param board
+     *            the current layout
+     */
+    private void applyRandomMove(LocalSearchLayout layout, IFoEGameboard board, Random r) {
+	int width = layout.getWidth();
+	int height = layout.getHeight();
+	int x = r.nextInt(width);
+	int y = r.nextInt(height);
+	int houseX = r.nextInt(width - HOUSE.getWidth() + 1);
+	int houseY = r.nextInt(height - HOUSE.getHeight() + 1);
+	int kind = r.nextInt(10);
+	if (kind < 2) {
+	    if (layout.canAddWay(x, y)) {
+		layout.addWay(x, y);
+	    }
+	} else if (kind < 4) {
+	    if (layout.canRemoveWay(x, y)) {
+		layout.removeWay(x, y);
+		removedWays++;
+	    }
+	} else if (kind < 6) {
+	    int ways = layout.countWaysUnderHouse(houseX, houseY);
+	    assertUnchanged("count ways under house", layout, board);
+	    if (ways >= 0) {
+		layout.addHouse(houseX, houseY);
+		housesOnWays += (ways > 0 ? 1 : 0);
+	    }
+	} else if (kind < 7) {
+	    if (layout.getHouseCount() > 0) {
+		layout.removeHouse(r.nextInt(layout.getHouseCount()));
+	    }
+	} else if (kind < 9) {
+	    if (layout.getHouseCount() > 0) {
+		int house = r.nextInt(layout.getHouseCount());
+		if (r.nextBoolean()) {
+		    houseX = layout.getHouseX(house) + r.nextInt(3) - 1;
+		    houseY = layout.getHouseY(house) + r.nextInt(3) - 1;
+		}
+		if (layout.canMoveHouse(house, houseX, houseY)) {
+		    layout.moveHouse(house, houseX, houseY);
+		}
+	    }
+	} else {
+	    int direction = r.nextInt(4);
+	    int dx = (direction == 0 ? -1 : (direction == 1 ? 1 : 0));
+	    int dy = (direction == 2 ? -1 : (direction == 3 ? 1 : 0));
+	    boolean free = isCastleAreaFree(board, dx, dy);
+	    if (layout.moveCastle(dx, dy)) {
+		assertTrue("castle moved onto other buildings", free);
+		castleMoves++;
+	    } else {
+		assertUnchanged("rejected castle move", layout, board);
+		castleRollbacks += (free ? 1 : 0);
+	    }
+	}
+    }
+
+    /**
+     * @return <code>true</code> if the castle moved by dx/dy would lie on the
+     *         board and cover free tiles or its own tiles only
+     */
+    private static boolean isCastleAreaFree(IFoEGameboard board, int dx, int dy) {
+	int castleTile = -1;
+	for (int tile = 0; tile < board.getWidth() * board.getHeight() && castleTile < 0; tile++) {
+	    if (board.getBuilding(tile % board.getWidth(), tile / board.getWidth()) == CASTLE) {
+		castleTile = tile;
+	    }
+	}
+	int x = castleTile % board.getWidth() + dx;
+	int y = castleTile / board.getWidth() + dy;
+	if (x < 0 || y < 0 || x + CASTLE.getWidth() > board.getWidth() || y + CASTLE.getHeight() > board.getHeight()) {
+	    return false;
+	}
+	for (int ty = y; ty < y + CASTLE.getHeight(); ty++) {
+	    for (int tx = x; tx < x + CASTLE.getWidth(); tx++) {
+		TileState building = board.getBuilding(tx, ty);
+		if (building != TileState.FREE && building != CASTLE) {
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
+    private static void assertUnchanged(String message, LocalSearchLayout layout, IFoEGameboard board) {
+	IFoEGameboard current = board.clone();
+	layout.writeTo(current);
+	long[] expected = new long[board.getPackedSize()];
+	long[] actual = new long[board.getPackedSize()];
+	board.exportPacked(expected, 0);
+	current.exportPacked(actual, 0);
+	assertArrayEquals(message, expected, actual);
+	assertEquals(message, board.getRating(), layout.getRating());
+    }
+
+    /**
+     * checks, that the houses of the layout are the houses of the board
+     */
+    private static void assertHouses(String message, LocalSearchLayout layout, IFoEGameboard board) {
+	int houseTiles = 0;
+	for (int y = 0; y < board.getHeight(); y++) {
+	    for (int x = 0; x < board.getWidth(); x++) {
+		houseTiles += (board.getBuilding(x, y) == HOUSE ? 1 : 0);
+	    }
+	}
+	assertEquals(message, layout.getHouseCount() * HOUSE.getWidth() * HOUSE.getHeight(), houseTiles);
+	for (int house = 0; house < layout.getHouseCount(); house++) {
+	    for (int dy = 0; dy < HOUSE.getHeight(); dy++) {
+		for (int dx = 0; dx < HOUSE.getWidth(); dx++) {
+		    assertEquals(message, HOUSE,
+			    board.getBuilding(layout.getHouseX(house) + dx, layout.getHouseY(house) + dy));
+		}
+	    }
+	}
+    }
+}
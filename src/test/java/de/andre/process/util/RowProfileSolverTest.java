@@ -0,0 +1,102 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.Tile;
+import de.andre.data.TileState;
+import de.andre.data.impl.BitPlaneBoard;
+
+/**
+ * Solves small boards for every castle position and compares the best rating
+ * with an exhaustive search over the placement options of a board.
+ *
+ * @author Andre
+ */
+public class RowProfileSolverTest {
+    private static final TileState[] BUILDINGS = { TileState.HOUSE, TileState.WAY };
+
+    @Test
+    public void matchesExhaustiveSearch() {
+	int[][] sizes = { { 7, 6, 0 }, { 8, 6, -6 }, { 8, 7, -14 }, { 9, 7, -21 }, { 10, 6, 198 }, { 10, 7, 404 },
+		{ 10, 8, 394 }, { 11, 7, 397 }, { 12, 6, 402 }, { 10, 9, 816 } };
+	for (int[] size : sizes) {
+	    String message = size[0] + " x " + size[1];
+	    assertEquals(message, size[2], exhaustiveSearch(size[0], size[1]));
+	    assertEquals(message, size[2], solve(size[0], size[1]));
+	}
+    }
+
+    /**
+     * solves every castle position like {@link de.andre.process.ProfileDynamicProgramming}
+     * does, but without using the symmetry of the board
+     *
+     * @return the best rating
+     */
+    private static int solve(int width, int height) {
+	int incumbent = Integer.MIN_VALUE;
+	for (int castleY = 0; castleY + TileState.CASTLE.getHeight() <= height; castleY++) {
+	    for (int castleX = 0; castleX + TileState.CASTLE.getWidth() <= width; castleX++) {
+		RowProfileSolver solver = new RowProfileSolver(width, height, castleX, castleY);
+		int rating = solver.solve(incumbent);
+		if (rating > incumbent) {
+		    incumbent = rating;
+		    IFoEGameboard board = new BitPlaneBoard(width, height);
+		    solver.writeTo(board);
+		    assertEquals("castle at " + castleX + "/" + castleY, rating, board.getRating());
+		}
+	    }
+	}
+	return incumbent;
+    }
+
+    /**
+     * @return the best rating of all layouts, that can be built by placing
+     *         buildings on the board
+     */
+    private static int exhaustiveSearch(int width, int height) {
+	IFoEGameboard board = new BitPlaneBoard(width, height);
+	Set<Long> visited = new HashSet<>();
+	int best = Integer.MIN_VALUE;
+	int[] options = new int[width * height];
+	int optionCnt = board.getPlacementOptions(TileState.CASTLE, options);
+	for (int idx = 0; idx < optionCnt; idx++) {
+	    board.placeBuildingUndoable(Tile.unpackX(options[idx]), Tile.unpackY(options[idx]), TileState.CASTLE);
+	    if (visited.add(board.getCanonicalHash())) {
+		best = search(board, visited, best);
+	    }
+	    board.undoLastPlacement();
+	}
+	return best;
+    }
+
+    /**
+     * visits all layouts reachable from the board, but skips those, that
+     * cannot beat the best rating
+     *
+     * @return the best rating found so far
+     */
+    private static int search(IFoEGameboard board, Set<Long> visited, int best) {
+	best = Math.max(best, board.getRating());
+	if (board.getRatingUpperBound() <= best) {
+	    return best;
+	}
+	int[] options = new int[board.getWidth() * board.getHeight()];
+	for (TileState building : BUILDINGS) {
+	    int optionCnt = board.getPlacementOptions(building, options);
+	    for (int idx = 0; idx < optionCnt; idx++) {
+		board.placeBuildingUndoable(Tile.unpackX(options[idx]), Tile.unpackY(options[idx]), building);
+		if (visited.add(board.getCanonicalHash())) {
+		    best = search(board, visited, best);
+		}
+		board.undoLastPlacement();
+	    }
+	}
+	return best;
+    }
+}
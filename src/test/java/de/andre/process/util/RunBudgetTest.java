@@ -0,0 +1,125 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Checks every limit of a {@link RunBudget} with a clock, that is set by the
+ * test, so nothing sleeps.
+ *
+ * @author Andre
+ */
+public class RunBudgetTest {
+    private final AtomicLong now = new AtomicLong(1000L);
+
+    private RunBudget createBudget(long timeLimitSeconds, long maxBoards, long maxRollouts, long stagnationSeconds) {
+	return new RunBudget(timeLimitSeconds, maxBoards, maxRollouts, stagnationSeconds, now::get);
+    }
+
+    private void advanceMillis(long millis) {
+	now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void unlimited() {
+	RunBudget budget = createBudget(0, 0, 0, 0);
+	budget.countBoards(Long.MAX_VALUE / 2);
+	budget.countRollouts(Long.MAX_VALUE / 2);
+	advanceMillis(TimeUnit.DAYS.toMillis(1000));
+	budget.check(0);
+	assertFalse(budget.isExhausted());
+	assertNull(budget.getExhaustedReason());
+    }
+
+    @Test
+    public void timeLimit() {
+	RunBudget budget = createBudget(10, 0, 0, 0);
+	advanceMillis(9999);
+	budget.check(0);
+	assertFalse(budget.isExhausted());
+	assertEquals(9999, budget.getElapsedMillis());
+	advanceMillis(1);
+	budget.check(0);
+	assertTrue(budget.isExhausted());
+	assertEquals("time limit reached", budget.getExhaustedReason());
+    }
+
+    @Test
+    public void maxBoards() {
+	RunBudget budget = createBudget(0, 100, 0, 0);
+	budget.countBoards(60);
+	budget.countBoards(39);
+	budget.check(0);
+	assertFalse(budget.isExhausted());
+	budget.countBoards(1);
+	// counting alone doesn't end the run, the check does
+	assertFalse(budget.isExhausted());
+	budget.check(0);
+	assertEquals("max boards reached", budget.getExhaustedReason());
+	assertEquals(100, budget.getBoards());
+    }
+
+    @Test
+    public void maxRollouts() {
+	RunBudget budget = createBudget(0, 0, 50, 0);
+	budget.countRollouts(49);
+	budget.check(0);
+	assertFalse(budget.isExhausted());
+	budget.countRollouts(2);
+	budget.check(0);
+	assertEquals("max rollouts reached", budget.getExhaustedReason());
+	assertEquals(51, budget.getRollouts());
+    }
+
+    @Test
+    public void stagnation() {
+	RunBudget budget = createBudget(0, 0, 0, 5);
+	budget.check(10);
+	advanceMillis(4000);
+	budget.check(10);
+	assertFalse(budget.isExhausted());
+	// an improvement starts the stagnation time again
+	advanceMillis(2000);
+	budget.check(11);
+	advanceMillis(4999);
+	budget.check(11);
+	assertFalse(budget.isExhausted());
+	advanceMillis(1);
+	budget.check(11);
+	assertEquals("no improvement for 5 s", budget.getExhaustedReason());
+    }
+
+    @Test
+    public void firstReasonWins() {
+	RunBudget budget = createBudget(10, 100, 100, 5);
+	// reached at the same time, the time limit is checked first
+	budget.countBoards(100);
+	advanceMillis(10000);
+	budget.check(0);
+	assertEquals("time limit reached", budget.getExhaustedReason());
+
+	// later limits don't replace the reason
+	budget.countRollouts(100);
+	budget.check(0);
+	budget.cancel();
+	assertEquals("time limit reached", budget.getExhaustedReason());
+    }
+
+    @Test
+    public void cancelWins() {
+	RunBudget budget = createBudget(10, 100, 0, 0);
+	budget.cancel();
+	assertTrue(budget.isExhausted());
+	budget.countBoards(100);
+	advanceMillis(10000);
+	budget.check(0);
+	assertEquals("cancelled", budget.getExhaustedReason());
+    }
+}
@@ -0,0 +1,129 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.andre.data.IFoEGameboard;
+import de.andre.data.RandomPlacements;
+import de.andre.data.impl.BitPlaneBoard;
+
+/**
+ * Compares {@link SpillingBoardDeque} with an {@link ArrayDeque} for random
+ * sequences of offers and polls. The deque keeps only a few boards in memory,
+ * so most boards go through one or more segment files.
+ *
+ * @author Andre
+ */
+public class SpillingBoardDequeTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsOrderAcrossSpilledSegments() throws IOException {
+	Random r = new Random(42);
+	List<IFoEGameboard> boards = RandomPlacements.createBoards(10, 9, 200, 8, r);
+	IFoEGameboard target = new BitPlaneBoard(10, 9);
+	Path directory = folder.newFolder().toPath();
+
+	ArrayDeque<IFoEGameboard> expected = new ArrayDeque<>();
+	try (SpillingBoardDeque deque = new SpillingBoardDeque(target.getPackedSize(), 7, 3, directory)) {
+	    for (int step = 0; step < 20000; step++) {
+		int action = r.nextInt(10);
+		if (action < 3) {
+		    IFoEGameboard board = boards.get(r.nextInt(boards.size()));
+		    deque.offerFirst(board);
+		    expected.offerFirst(board);
+		} else if (action < 6) {
+		    IFoEGameboard board = boards.get(r.nextInt(boards.size()));
+		    deque.offerLast(board);
+		    expected.offerLast(board);
+		} else {
+		    IFoEGameboard board = expected.pollFirst();
+		    assertEquals("step " + step, board != null, deque.pollFirst(target));
+		    if (board != null) {
+			assertEquals("step " + step, board, target);
+		    }
+		}
+		assertEquals("step " + step, expected.size(), deque.size());
+	    }
+
+	    // drain the deque, all segments are read back in order
+	    while (!expected.isEmpty()) {
+		assertTrue(deque.pollFirst(target));
+		assertEquals(expected.pollFirst(), target);
+	    }
+	    assertFalse(deque.pollFirst(target));
+	    assertEquals(0, deque.getSpilledBoards());
+	}
+	assertEquals("all segment files are deleted", 0, countFiles(directory));
+    }
+
+    @Test
+    public void readsSegmentsLargerThanTheReadBuffer() throws IOException {
+	Random r = new Random(3);
+	List<IFoEGameboard> boards = RandomPlacements.createBoards(10, 9, 100, 8, r);
+	IFoEGameboard target = new BitPlaneBoard(10, 9);
+	// a segment of 100000 boards doesn't fit into a single read buffer
+	int cnt = 250000;
+	try (SpillingBoardDeque deque = new SpillingBoardDeque(target.getPackedSize(), 100000, 100000,
+		folder.newFolder().toPath())) {
+	    for (int idx = 0; idx < cnt; idx++) {
+		// reversed segments by offerFirst, appended segments by offerLast
+		if (idx < cnt / 2) {
+		    deque.offerFirst(boards.get(idx % boards.size()));
+		} else {
+		    deque.offerLast(boards.get(idx % boards.size()));
+		}
+	    }
+	    assertTrue(deque.getSpilledBoards() > 100000);
+
+	    for (int idx = cnt / 2 - 1; idx >= 0; idx--) {
+		assertTrue(deque.pollFirst(target));
+		assertEquals("board " + idx, boards.get(idx % boards.size()), target);
+	    }
+	    for (int idx = cnt / 2; idx < cnt; idx++) {
+		assertTrue(deque.pollFirst(target));
+		assertEquals("board " + idx, boards.get(idx % boards.size()), target);
+	    }
+	    assertTrue(deque.isEmpty());
+	}
+    }
+
+    @Test
+    public void closeDeletesAllSegments() throws IOException {
+	Random r = new Random(7);
+	List<IFoEGameboard> boards = RandomPlacements.createBoards(10, 9, 50, 8, r);
+	Path directory = folder.newFolder().toPath();
+
+	try (SpillingBoardDeque deque = new SpillingBoardDeque(boards.get(0).getPackedSize(), 5, 2, directory)) {
+	    for (IFoEGameboard board : boards) {
+		deque.offerFirst(board);
+		deque.offerLast(board);
+	    }
+	    assertEquals(100, deque.size());
+	    assertTrue(deque.getSpilledBoards() > 0);
+	    // the segments are in a directory of their own
+	    assertEquals(1, countFiles(directory));
+	}
+	assertEquals(0, countFiles(directory));
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+	try (Stream<Path> files = Files.list(directory)) {
+	    return files.count();
+	}
+    }
+}
@@ -0,0 +1,52 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Offers random states to a {@link StateTable} and compares it with a map.
+ *
+ * @author Andre
+ */
+public class StateTableTest {
+
+    @Test
+    public void keepsTheBestOfferOfEveryState() {
+	Random r = new Random(20);
+	// a small table, so it has to grow several times
+	StateTable table = new StateTable();
+	Map<Long, int[]> expected = new HashMap<>();
+	List<Long> order = new ArrayList<>();
+	for (int offer = 0; offer < 100000; offer++) {
+	    // keys, that differ in the upper bits only, as profiles do
+	    long key = (long) r.nextInt(5000) << 40 | (r.nextBoolean() ? 1L << 63 : 0L);
+	    int value = r.nextInt(1000) - 500;
+	    table.offer(key, value, offer);
+	    int[] best = expected.get(key);
+	    if (best == null) {
+		expected.put(key, new int[] { value, offer });
+		order.add(key);
+	    } else if (value > best[0]) {
+		best[0] = value;
+		best[1] = offer;
+	    }
+	}
+	table.freeze();
+
+	assertEquals(expected.size(), table.size());
+	for (int idx = 0; idx < table.size(); idx++) {
+	    // the entries are in the order of their first offer
+	    assertEquals(order.get(idx).longValue(), table.getKey(idx));
+	    int[] best = expected.get(table.getKey(idx));
+	    assertEquals(best[0], table.getValue(idx));
+	    assertEquals(best[1], table.getPayload(idx));
+	}
+    }
+}
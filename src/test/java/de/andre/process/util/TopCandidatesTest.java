@@ -0,0 +1,73 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Offers many candidates, most of them several times, and compares the kept
+ * candidates with the best distinct ones.
+ *
+ * @author Andre
+ */
+public class TopCandidatesTest {
+
+    @Test
+    public void keepsTheBestDistinctCandidates() {
+	Random r = new Random(14);
+	for (int capacity : new int[] { 1, 7, 100, 1000 }) {
+	    TopCandidates candidates = new TopCandidates(capacity);
+	    for (int round = 0; round < 3; round++) {
+		candidates.clear();
+		// like the engines: the same hash comes with the same key
+		long[] keyOfHash = new long[3 * capacity + 10];
+		TreeMap<Long, Long> distinct = new TreeMap<>();
+		for (int hash = 0; hash < keyOfHash.length; hash++) {
+		    keyOfHash[hash] = r.nextInt(50) * 10000L + hash;
+		}
+		for (int idx = 0; idx < 20 * keyOfHash.length; idx++) {
+		    int hash = r.nextInt(keyOfHash.length);
+		    boolean kept = candidates.offer(keyOfHash[hash], hash, idx);
+		    if (distinct.containsKey(keyOfHash[hash])) {
+			assertFalse("the same hash again", kept);
+		    }
+		    distinct.put(keyOfHash[hash], (long) hash);
+		}
+
+		String message = "capacity " + capacity + ", round " + round;
+		assertEquals(message, Math.min(capacity, distinct.size()), candidates.size());
+		TopCandidates sorted = TopCandidates.merge(new TopCandidates[] { candidates }, capacity);
+		assertEquals(message, candidates.size(), sorted.size());
+		Long[] expectedKeys = distinct.descendingKeySet().toArray(new Long[0]);
+		for (int idx = 0; idx < sorted.size(); idx++) {
+		    Long expectedKey = expectedKeys[idx];
+		    assertEquals(message, expectedKey.longValue(), sorted.getKey(idx));
+		    assertEquals(message, distinct.get(expectedKey).longValue(), sorted.getHash(idx));
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void offersAHashOnlyOnce() {
+	TopCandidates candidates = new TopCandidates(3);
+	assertTrue(candidates.offer(10, 1, 0));
+	assertFalse(candidates.offer(10, 1, 1));
+	assertTrue(candidates.offer(20, 2, 2));
+	assertTrue(candidates.offer(30, 3, 3));
+	assertTrue(candidates.offer(40, 4, 4));
+	assertFalse("dropped already", candidates.offer(10, 1, 5));
+	assertFalse(candidates.offer(40, 4, 6));
+	assertEquals(3, candidates.size());
+
+	candidates.clear();
+	assertTrue(candidates.offer(40, 4, 7));
+	assertEquals(1, candidates.size());
+	assertEquals(7, candidates.getPayload(0));
+    }
+}
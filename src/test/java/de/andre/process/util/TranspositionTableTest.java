@@ -0,0 +1,73 @@
+package de.andre.process.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import de.andre.process.util.TranspositionTable.ReplacementPolicy;
+
+/**
+ * Records layouts in small tables, so that they compete for the slots. The
+ * hashes 1 and 17 share a slot of a table with 16 slots.
+ *
+ * @author Andre
+ */
+public class TranspositionTableTest {
+
+    @Test
+    public void recordsVisitsAndRatings() {
+	TranspositionTable table = new TranspositionTable(4, ReplacementPolicy.ALWAYS);
+	assertEquals(16, table.capacity());
+	assertFalse(table.markVisited(1L));
+	assertTrue(table.markVisited(1L));
+	table.addPlaydown(1L, 100);
+	table.addPlaydown(1L, -30);
+	assertEquals(4, table.getVisits(1L));
+	assertEquals(70L, table.getRatingSum(1L));
+	assertEquals(0, table.getVisits(2L));
+	assertEquals(0L, table.getRatingSum(2L));
+    }
+
+    @Test
+    public void alwaysReplaces() {
+	TranspositionTable table = new TranspositionTable(4, ReplacementPolicy.ALWAYS);
+	table.addPlaydown(1L, 100);
+	table.addPlaydown(1L, 100);
+	assertFalse(table.markVisited(17L));
+	assertEquals(0, table.getVisits(1L));
+	assertEquals(1, table.getVisits(17L));
+    }
+
+    @Test
+    public void preferVisitedAgesTheOldLayout() {
+	TranspositionTable table = new TranspositionTable(4, ReplacementPolicy.PREFER_VISITED);
+	for (int idx = 0; idx < 4; idx++) {
+	    table.addPlaydown(1L, 10);
+	}
+	// 4 visits survive two collisions, the mean rating stays the same
+	table.markVisited(17L);
+	assertEquals(2, table.getVisits(1L));
+	assertEquals(20L, table.getRatingSum(1L));
+	table.markVisited(17L);
+	assertEquals(1, table.getVisits(1L));
+	assertEquals(0, table.getVisits(17L));
+	table.markVisited(17L);
+	assertEquals(0, table.getVisits(1L));
+	assertEquals(1, table.getVisits(17L));
+    }
+
+    @Test
+    public void rejectsOtherSizes() {
+	for (int sizeBits : new int[] { 0, 31, -1 }) {
+	    try {
+		new TranspositionTable(sizeBits, ReplacementPolicy.ALWAYS);
+		fail(sizeBits + " bits");
+	    } catch (IllegalArgumentException e) {
+		// expected
+	    }
+	}
+    }
+}